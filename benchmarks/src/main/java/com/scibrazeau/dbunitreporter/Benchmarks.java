@@ -0,0 +1,36 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks (all of them, or those selected by the usual JMH arguments) with 1, 2, 4...
+ * threads, up to the number of processors or to what -t asks for.
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        int maxThreads = options.getThreads().orElse(Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            new Runner(new OptionsBuilder()
+                    .parent(options)
+                    .threads(threads)
+                    .build()).run();
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+}
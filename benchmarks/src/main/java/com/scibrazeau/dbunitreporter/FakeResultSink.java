@@ -0,0 +1,33 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Schema;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Discards every row (SINK=fake), so benchmarks only measure the reporter itself.
+ */
+public class FakeResultSink implements ResultSink {
+    private final LongAdder rows = new LongAdder();
+
+    @Override
+    public String getName() {
+        return "fake";
+    }
+
+    @Override
+    public void open(String dbName, String tableName, Schema schema) {
+        // nothing to create
+    }
+
+    @Override
+    public void write(List<Map<String, Object>> batch) {
+        rows.add(batch.size());
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+}
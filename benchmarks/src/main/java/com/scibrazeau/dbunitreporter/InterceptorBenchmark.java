@@ -0,0 +1,110 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the interceptor adds to each test: capturing its output, building the row and handing it
+ * to the (fake) sink.  The queue blocks when full, so the score also reflects whether the
+ * batching thread keeps up with the producers.  The console is replaced by a null stream, so
+ * the test's output is only written to its capture buffer rather than measuring terminal I/O.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-DIS_CI=true", "-DSINK=fake", "-DSPOOL=false"})
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+
+    private BQTestInterceptor interceptor;
+    private ReflectiveInvocationContext<Method> invocationContext;
+    private ExtensionContext extensionContext;
+    private PrintStream originalOut;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        // before the first test installs the capture, which then wraps the null stream
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), true));
+        interceptor = new BQTestInterceptor();
+        interceptor.lazyLoad();
+        invocationContext = newInvocationContext(InterceptorBenchmark.class.getMethod("sampleTest"));
+        extensionContext = newExtensionContext(Set.of("fast", "unit"));
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        interceptor.close();
+        System.setOut(originalOut);
+    }
+
+    public void sampleTest() {
+        System.out.println("some test output");
+    }
+
+    @Benchmark
+    public void interceptTestMethod() throws Throwable {
+        InvocationInterceptor.Invocation<Void> invocation = () -> {
+            sampleTest();
+            return null;
+        };
+        interceptor.interceptTestMethod(invocation, invocationContext, extensionContext);
+    }
+
+    private static ReflectiveInvocationContext<Method> newInvocationContext(Method method) {
+        return new ReflectiveInvocationContext<>() {
+            @Override
+            public Class<?> getTargetClass() {
+                return method.getDeclaringClass();
+            }
+
+            @Override
+            public Method getExecutable() {
+                return method;
+            }
+
+            @Override
+            public List<Object> getArguments() {
+                return List.of();
+            }
+
+            @Override
+            public Optional<Object> getTarget() {
+                return Optional.empty();
+            }
+        };
+    }
+
+    /**
+     * Only the tags and ids are used by the interceptor.
+     */
+    private static ExtensionContext newExtensionContext(Set<String> tags) {
+        return (ExtensionContext) Proxy.newProxyInstance(
+                ExtensionContext.class.getClassLoader(),
+                new Class<?>[]{ExtensionContext.class},
+                (proxy, method, args) -> {
+                    if ("getTags".equals(method.getName())) {
+                        return tags;
+                    }
+                    if ("getUniqueId".equals(method.getName())) {
+                        return "[engine:junit-jupiter]/[class:com.scibrazeau.dbunitreporter.InterceptorBenchmark]/[method:sampleTest()]";
+                    }
+                    if ("getParent".equals(method.getName())) {
+                        return Optional.empty();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
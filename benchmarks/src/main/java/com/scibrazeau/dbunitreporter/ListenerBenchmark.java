@@ -0,0 +1,66 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestIdentifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What REPORT_MODE=listener adds to each test, for comparison with {@link InterceptorBenchmark}:
+ * the started and finished events of one test, with the row handed to the (fake) sink.  Output
+ * isn't captured in that mode, so the test itself does nothing.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-DIS_CI=true", "-DSINK=fake", "-DSPOOL=false", "-DREPORT_MODE=listener"})
+@State(Scope.Benchmark)
+public class ListenerBenchmark {
+
+    private TimingListener listener;
+
+    /**
+     * Tests running in parallel are distinct nodes.
+     */
+    @State(Scope.Thread)
+    public static class ThreadTest {
+        private TestIdentifier test;
+
+        @Setup
+        public void setUp() {
+            var uniqueId = UniqueId.forEngine("junit-jupiter")
+                    .append("class", ListenerBenchmark.class.getName())
+                    .append("method", "sampleTest" + Thread.currentThread().getId() + "()");
+            var descriptor = new AbstractTestDescriptor(uniqueId, "sampleTest()", MethodSource.from(ListenerBenchmark.class.getName(), "sampleTest", "")) {
+                @Override
+                public Type getType() {
+                    return TestDescriptor.Type.TEST;
+                }
+            };
+            test = TestIdentifier.from(descriptor);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        listener = new TimingListener();
+        listener.testPlanExecutionStarted(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        listener.testPlanExecutionFinished(null);
+    }
+
+    @Benchmark
+    public void testEvents(ThreadTest thread) {
+        listener.executionStarted(thread.test);
+        listener.executionFinished(thread.test, TestExecutionResult.successful());
+    }
+}
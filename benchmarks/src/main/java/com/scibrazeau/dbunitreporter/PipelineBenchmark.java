@@ -0,0 +1,55 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second the batching thread moves from the queue to the (fake) sink.  The queue
+ * blocks producers when full, so throughput is bounded by the batching thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"100", "500"})
+    public int maxRows;
+
+    @Param({"BLOCK", "DROP_OLDEST"})
+    public OverflowPolicy policy;
+
+    private RowQueue queue;
+    private BatchPipeline pipeline;
+    private Map<String, Object> row;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queue = new RowQueue(1000, policy);
+        pipeline = new BatchPipeline(queue, CompletableFuture.completedFuture(new FakeResultSink()), null,
+                maxRows, 5_000_000, 500, BatchPipeline.newSenderExecutor("platform", 4), 4);
+        pipeline.start();
+        row = new HashMap<>();
+        row.put("row_id", "00000000-0000-4000-8000-000000000000");
+        row.put("class_name", "PipelineBenchmark");
+        row.put("method_name", "put");
+        row.put("success", true);
+        row.put("tags", new String[]{"FAST", "UNIT"});
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        pipeline.close();
+    }
+
+    @Benchmark
+    public void put() throws InterruptedException {
+        queue.put(row);
+    }
+}
@@ -0,0 +1,40 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of profiling a test's resources (PROFILE_RESOURCES), compared to not profiling it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResourceProfilerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private TestResultRow row;
+
+    @Setup
+    public void setUp() {
+        var run = new TestResultRow.RunInfo("main", null, "abcdef1", "host", "module");
+        row = new TestResultRow(run, "id", "com.example", "SomeTest", "testIt", "()", 0, 0, true);
+    }
+
+    @Benchmark
+    public void profile(Blackhole blackhole) {
+        var resourcesAtStart = enabled ? ResourceProfiler.snapshot() : null;
+        blackhole.consume(row);
+        var resources = resourcesAtStart == null ? null : ResourceProfiler.snapshot().since(resourcesAtStart);
+        if (resources != null) {
+            row.setResources(resources);
+        }
+        blackhole.consume(row);
+    }
+}
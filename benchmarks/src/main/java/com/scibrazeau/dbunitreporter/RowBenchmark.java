@@ -0,0 +1,54 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a result row, and reading it back the way sinks do.  Meant to be run with the GC
+ * profiler (-prof gc), to watch gc.alloc.rate.norm: the bytes allocated per row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowBenchmark {
+
+    private final TestResultRow.RunInfo run = new TestResultRow.RunInfo("feature/rpds-458", "rpds-458", "abcdef1", "host", "module");
+    private final Set<String> tags = Set.of("FAST", "UNIT");
+    private final List<String> columns = BQTestInterceptor.getSchema().getFields().stream()
+            .map(field -> field.getName())
+            .toList();
+    private TestResultRow row;
+
+    @Setup
+    public void setUp() {
+        row = newRow();
+    }
+
+    @Benchmark
+    public TestResultRow newRow() {
+        long now = System.currentTimeMillis();
+        var newRow = new TestResultRow(run, "00000000-0000-4000-8000-000000000000", "com.example", "SomeTest", "testIt", "()", now - 5, now, true);
+        newRow.setStdout("", 0, false);
+        newRow.setTags(BQTestInterceptor.normalizeTags(tags, Set.of()));
+        return newRow;
+    }
+
+    @Benchmark
+    public void readRow(Blackhole blackhole) {
+        for (String column : columns) {
+            blackhole.consume(row.get(column));
+        }
+    }
+
+    @Benchmark
+    public long estimateBytes() {
+        return BatchPipeline.estimateBytes(row);
+    }
+}
@@ -0,0 +1,33 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization of the JUnit and {@link TagUtils} tags of a test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TagBenchmark {
+
+    private final Set<String> none = Set.of();
+    private final Set<String> tags = Set.of("fast", "unit", "db");
+    private final List<String> extraTags = List.of("Slow, flaky", " unit ");
+
+    @Benchmark
+    public String[] noTags() {
+        return BQTestInterceptor.normalizeTags(none, none);
+    }
+
+    @Benchmark
+    public String[] someTags() {
+        return BQTestInterceptor.normalizeTags(tags, extraTags);
+    }
+}
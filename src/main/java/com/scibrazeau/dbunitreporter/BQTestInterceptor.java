@@ -1,13 +1,10 @@
 package com.scibrazeau.dbunitreporter;
 
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.auth.oauth2.ImpersonatedCredentials;
-import com.google.cloud.bigquery.*;
-import com.google.common.base.Stopwatch;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
 import one.util.streamex.StreamEx;
-import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.logging.log4j.LogManager;
@@ -15,40 +12,89 @@ import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.extension.*;
 
 import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
 import static org.junit.jupiter.api.extension.ExtensionContext.Namespace.GLOBAL;
 
 @SuppressWarnings("java:S3008")
 public class BQTestInterceptor implements Extension, BeforeAllCallback, InvocationInterceptor, ExtensionContext.Store.CloseableResource {
 
-    private static final String SHORT_SHA = getFromEnvOrGit("SHORT_SHA", "git rev-parse --short HEAD");
-    private static final String BRANCH_NAME = getFromEnvOrGit("BRANCH_NAME", "git rev-parse --abbrev-ref HEAD");
+    private static final GitInfo GIT_INFO = GitInfo.read(new File("."));
+    private static final String SHORT_SHA = getFromEnvOrGit("SHORT_SHA", GIT_INFO.getShortSha());
+    private static final String BRANCH_NAME = getFromEnvOrGit("BRANCH_NAME", GIT_INFO.getBranchName());
     private static final String BRANCH_TAG = getBranchTag(BRANCH_NAME);
 
 
     private static final String DB_NAME = getPropValue("DB_NAME", "testresults");
     private static final String TABLE_NAME = getPropValue("TABLE_NAME", "testresults");
 
+    private static final StdoutPolicy STDOUT_POLICY = StdoutPolicy.valueOf(getPropValue("STDOUT_POLICY", "CAPPED").toUpperCase());
+    private static final int STDOUT_MAX_KB = Integer.parseInt(getPropValue("STDOUT_MAX_KB", "1024"));
+    private static final int STDOUT_MEMORY_KB = Integer.parseInt(getPropValue("STDOUT_MEMORY_KB", "64"));
+    private static final long STDOUT_SPILL_MAX_KB = Long.parseLong(getPropValue("STDOUT_SPILL_MAX_KB", "4096"));
+    private static final boolean PROFILE_RESOURCES = Boolean.parseBoolean(getPropValue("PROFILE_RESOURCES", "false"));
+    private static final String ROLLUP_TAG = getPropValue("ROLLUP_TAG", "rollup");
+    private static final int ROLLUP_MAX_FAILED = Integer.parseInt(getPropValue("ROLLUP_MAX_FAILED", "100"));
+    private static final boolean TIMING_PHASES = Boolean.parseBoolean(getPropValue("TIMING_PHASES", "false"));
+
     private static final String COMPUTER_NAME = getComputerName();
-    private static final String MODULE_NAME = getModuleNameInternal();
+    private static final String MODULE_NAME = ReporterConfig.getModuleName();
+    private static final int SLOWEST_TESTS = Integer.parseInt(getPropValue("SLOWEST_TESTS", "10"));
+    private static final String STATS_FILE = getPropValue("STATS_FILE");
+    /* package */ static final TestResultRow.RunInfo RUN_INFO = new TestResultRow.RunInfo(BRANCH_NAME, BRANCH_TAG, SHORT_SHA, COMPUTER_NAME, MODULE_NAME);
+    private static final String[] NO_TAGS = new String[0];
     private static final Logger LOGGER = LogManager.getLogger(BQTestInterceptor.class);
-    private static final int INSERT_QUEUE_SIZE = 1000;
-
-    private final ArrayBlockingQueue<Map<String, Object>> messages = new ArrayBlockingQueue<>(INSERT_QUEUE_SIZE);
-    private BigQuery bigQuery;
-    private Table table;
-    private Thread logInserter;
+    private static final int INSERT_QUEUE_SIZE = Integer.parseInt(getPropValue("QUEUE_SIZE", "1000"));
+    private static final OverflowPolicy OVERFLOW_POLICY = OverflowPolicy.valueOf(getPropValue("QUEUE_OVERFLOW_POLICY", "BLOCK").toUpperCase());
+    private static final int BATCH_MAX_ROWS = Integer.parseInt(getPropValue("BATCH_MAX_ROWS", "500"));
+    private static final long BATCH_MAX_BYTES = Long.parseLong(getPropValue("BATCH_MAX_BYTES", "5000000"));
+    private static final long BATCH_LINGER_MS = Long.parseLong(getPropValue("BATCH_LINGER_MS", "500"));
+    private static final int SENDER_THREADS = Integer.parseInt(getPropValue("SENDER_THREADS", "4"));
+    private static final String SENDER_EXECUTOR = getPropValue("SENDER_EXECUTOR", "platform");
+    private static final String SINK = getPropValue("SINK", "insertAll");
+    private static final String AGGREGATOR_SOCKET = getPropValue("AGGREGATOR_SOCKET");
+    private static final boolean AGGREGATOR_SPAWN = Boolean.parseBoolean(getPropValue("AGGREGATOR_SPAWN", "true"));
+    // without a collector, a single JVM per build should update the summaries
+    private static final boolean SUMMARY_UPDATE = Boolean.parseBoolean(getPropValue("SUMMARY_UPDATE", "true"));
+    private static final boolean SPOOL_ENABLED = Boolean.parseBoolean(getPropValue("SPOOL", "false"));
+    private static final File SPOOL_DIR = new File(getPropValue("SPOOL_DIR",
+            new File(System.getProperty("java.io.tmpdir"), "db-unit-reporter-spool/" + MODULE_NAME).getPath()));
+
+    private final RowQueue messages = new RowQueue(INSERT_QUEUE_SIZE, OVERFLOW_POLICY);
+    private final RunStatistics statistics = new RunStatistics(MODULE_NAME, SLOWEST_TESTS);
+    private volatile BatchPipeline pipeline;
+    private Spool spool;
     private boolean started;
+    // send results to the ForkAggregator of the build, rather than to SINK
+    private final boolean forwardToAggregator;
+    // collects the results of every fork of the build, and updates the summaries once they are all sent
+    private final boolean collector;
+    // the modules the collector received results of, whatever its own working directory
+    private final Set<String> modules = ConcurrentHashMap.newKeySet();
+
+    public BQTestInterceptor() {
+        this(!Strings.isNullOrEmpty(AGGREGATOR_SOCKET), false);
+    }
+
+    /**
+     * @param collector     for the {@link ForkAggregator}, the only reporter that sees the end of
+     *                      the build.
+     */
+    /* package */ BQTestInterceptor(boolean forwardToAggregator, boolean collector) {
+        this.forwardToAggregator = forwardToAggregator;
+        this.collector = collector;
+    }
 
     static {
         if (!"true".equals(getPropValue("IS_CI"))) {
@@ -58,12 +104,10 @@ public class BQTestInterceptor implements Extension, BeforeAllCallback, Invocati
 
 
     public synchronized void lazyLoad() {
-        if (this.table != null) {
+        if (this.pipeline != null) {
             return;
         }
-        var projectId = getPropValue("PROJECT_ID");
-        var toImpersonate = getPropValue("GOOGLE_IMPERSONATE_SERVICE_ACCOUNT");
-        LOGGER.info("Initiating logging of test results to BigQuery\n   {}\n   {}\n   {}",
+        LOGGER.info("Initiating logging of test results\n   {}\n   {}\n   {}",
                 String.format("%-40.40s%-40.40s%s",
                         "short_sha=" + SHORT_SHA,
                         "branch_tag=" + BRANCH_TAG,
@@ -74,147 +118,248 @@ public class BQTestInterceptor implements Extension, BeforeAllCallback, Invocati
                         "db_name=" + DB_NAME,
                         "table_name=" + TABLE_NAME
                 ),
-                String.format("%-40.40s%-40.40s%s",
+                String.format("%-40.40s%s",
                         "module_name=" + MODULE_NAME,
-                        "project_id=" + projectId,
-                        "impersonate=" + toImpersonate
+                        "sink=" + (forwardToAggregator ? "aggregator " + AGGREGATOR_SOCKET : SINK)
                 )
         );
-        var builder = BigQueryOptions.newBuilder();
-        if (!StringUtils.isEmpty(projectId)) {
-            builder.setProjectId(projectId);
+        if (SPOOL_ENABLED) {
+            try {
+                this.spool = Spool.create(SPOOL_DIR);
+                this.messages.setDropListener(row -> this.spool.ack(List.of((String) row.get("row_id"))));
+            } catch (IOException e) {
+                LOGGER.warn("Could not create spool file in {}. Results of this run won't be recovered if it crashes.", SPOOL_DIR, e);
+            }
         }
+        ReporterMetrics.get().register(this.messages, MODULE_NAME);
+        var sink = new CompletableFuture<ResultSink>();
+        var newPipeline = new BatchPipeline(
+                this.messages,
+                sink,
+                this.spool,
+                BATCH_MAX_ROWS,
+                BATCH_MAX_BYTES,
+                BATCH_LINGER_MS,
+                BatchPipeline.newSenderExecutor(SENDER_EXECUTOR, SENDER_THREADS),
+                SENDER_THREADS
+        );
+        newPipeline.start();
+        this.pipeline = newPipeline;
+        // connecting, credentials and schema checks happen while the tests start running
+        var bootstrap = new Thread(() -> bootstrap(sink), "logBootstrap");
+        bootstrap.setDaemon(true);
+        bootstrap.start();
+    }
+
+    private void bootstrap(CompletableFuture<ResultSink> openedSink) {
         try {
-            GoogleCredentials base = GoogleCredentials.getApplicationDefault();
-            if (!StringUtils.isEmpty(toImpersonate)) {
-                LOGGER.debug("google_impersonate_service_account={}", toImpersonate);
-                base = ImpersonatedCredentials.create(
-                        base,
-                        toImpersonate,
-                        Collections.emptyList(),
-                        ImmutableList.<String>builder()
-                                .add("https://www.googleapis.com/auth/cloud-platform")
-                                .add("https://www.googleapis.com/auth/datastore")
-                                .build(),
-                        0
-                );
+            var sink = forwardToAggregator ?
+                    new ForkClientSink(new File(AGGREGATOR_SOCKET).toPath(), AGGREGATOR_SPAWN) :
+                    ResultSink.load(SINK);
+            sink.open(DB_NAME, TABLE_NAME, getSchema());
+            if (!openedSink.complete(sink)) {
+                // the pipeline stopped waiting for it
+                sink.close();
             }
-            builder.setCredentials(base);
-            this.bigQuery = builder.build().getService();
-            this.table = createTableIfMissing();
+        } catch (Exception | LinkageError e) {
+            openedSink.completeExceptionally(e);
+        }
+    }
 
-            LOGGER.trace("Started LogInserter Thread");
-            this.logInserter = new Thread(this::continuouslyInsertLogs, "logInserter");
-            this.logInserter.start();
-        } catch (IOException e) {
-            throw (Error) ExceptionUtils.rethrow(e);
+    /* package */ static Schema getSchema() {
+        return Schema.of(
+                Field.of("row_id", StandardSQLTypeName.STRING),
+                Field.of("branch_name", StandardSQLTypeName.STRING),
+                Field.of("branch_tag", StandardSQLTypeName.STRING),
+                Field.of("short_sha", StandardSQLTypeName.STRING),
+                Field.of("computer_name", StandardSQLTypeName.STRING),
+                Field.of("module_name", StandardSQLTypeName.STRING),
+                Field.of("package_name", StandardSQLTypeName.STRING),
+                Field.of("class_name", StandardSQLTypeName.STRING),
+                Field.of("method_name", StandardSQLTypeName.STRING),
+                Field.of("method_desc", StandardSQLTypeName.STRING),
+                Field.of("start_time", StandardSQLTypeName.DATETIME),
+                Field.of("end_time", StandardSQLTypeName.DATETIME),
+                Field.of("duration", StandardSQLTypeName.INT64),
+                Field.of("stdout", StandardSQLTypeName.STRING),
+                Field.of("stdout_bytes", StandardSQLTypeName.INT64),
+                Field.of("stdout_truncated", StandardSQLTypeName.BOOL),
+                Field.of("success", StandardSQLTypeName.BOOL),
+                Field.of("cpu_time_ms", StandardSQLTypeName.INT64),
+                Field.of("allocated_bytes", StandardSQLTypeName.INT64),
+                Field.of("gc_count", StandardSQLTypeName.INT64),
+                Field.of("gc_time_ms", StandardSQLTypeName.INT64),
+                Field.newBuilder("tags", StandardSQLTypeName.STRING)
+                        .setMode(Field.Mode.REPEATED)
+                        .build(),
+                Field.of("invocations", StandardSQLTypeName.INT64),
+                Field.of("failures", StandardSQLTypeName.INT64),
+                Field.of("min_duration", StandardSQLTypeName.INT64),
+                Field.of("mean_duration", StandardSQLTypeName.INT64),
+                Field.of("max_duration", StandardSQLTypeName.INT64),
+                Field.of("p95_duration", StandardSQLTypeName.INT64),
+                Field.newBuilder("failed_arguments", StandardSQLTypeName.STRING)
+                        .setMode(Field.Mode.REPEATED)
+                        .build(),
+                Field.of("node_id", StandardSQLTypeName.STRING),
+                Field.of("parent_id", StandardSQLTypeName.STRING),
+                Field.of("node_type", StandardSQLTypeName.STRING),
+                Field.of("display_name", StandardSQLTypeName.STRING),
+                Field.of("setup_ms", StandardSQLTypeName.INT64),
+                Field.of("teardown_ms", StandardSQLTypeName.INT64),
+                Field.newBuilder("create_user", StandardSQLTypeName.STRING)
+                        .setDefaultValueExpression("SESSION_USER()")
+                        .build()
+        );
+    }
+
+    @Override
+    public void interceptTestTemplateMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        if (isRollup(invocationContext.getExecutable(), extensionContext)) {
+            var template = extensionContext.getParent().orElse(extensionContext);
+            var rollup = template.getStore(ExtensionContext.Namespace.create(BQTestInterceptor.class)).getOrComputeIfAbsent(
+                    TemplateRollup.class,
+                    k -> new TemplateRollup(
+                            template.getUniqueId(),
+                            template.getParent().map(ExtensionContext::getUniqueId).orElse(null),
+                            ROLLUP_MAX_FAILED,
+                            STDOUT_MAX_KB * 1024,
+                            this::report
+                    ),
+                    TemplateRollup.class
+            );
+            wrap(invocation, invocationContext, extensionContext, InvocationInterceptor.super::interceptTestTemplateMethod, rollup);
+            return;
         }
+        wrap(invocation, invocationContext, extensionContext, InvocationInterceptor.super::interceptTestTemplateMethod, null);
     }
 
-    private void continuouslyInsertLogs() {
-        Stopwatch sw = Stopwatch.createStarted();
-        var insertBuilder = InsertAllRequest.newBuilder(table.getTableId());
-        long numberOfTests = 0;
-        int numRows = 0;
-        while (true) {
-            Map<String, Object> next = null;
-            try {
-                next = this.messages.poll(100, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                ExceptionUtils.rethrow(e);
-            }
-            boolean finished = next != null && next.isEmpty();
-            if (next != null && !next.isEmpty()) {
-                insertBuilder.addRow(next);
-                numRows++;
-                numberOfTests++;
-            }
-            if (sw.elapsed(TimeUnit.MILLISECONDS) > 500 || finished || this.messages.size() >= INSERT_QUEUE_SIZE) {
-                if (numRows > 0) {
-                    var rowToInsert = insertBuilder.build();
-                    var response = this.bigQuery.insertAll(rowToInsert);
-                    if (response.hasErrors()) {
-                        LOGGER.warn("Failed to insert some test results into bigquery table {}.{}. See errors below.", DB_NAME, TABLE_NAME);
-                        StreamEx.of(response.getInsertErrors().values())
-                                .flatMap(Collection::stream)
-                                .map(BigQueryError::getMessage)
-                                .forEach(LOGGER::warn);
-                    }
-                    insertBuilder = InsertAllRequest.newBuilder(table.getTableId());
-                    numRows = 0;
-                    sw.reset();
-                }
-                if (finished) {
-                    break;
-                }
-            }
+    /**
+     * @return whether the invocations of a test template are rolled up into a single row, because
+     *         of {@link RollupInvocations} or ROLLUP_TAG on the method or its class.
+     */
+    /* package */ static boolean isRollup(Method method, ExtensionContext extensionContext) {
+        if (method.isAnnotationPresent(RollupInvocations.class)
+                || extensionContext.getTestClass().orElse(method.getDeclaringClass()).isAnnotationPresent(RollupInvocations.class)) {
+            return true;
         }
-        LOGGER.info("Logging to big query complete. {} tests reported", numberOfTests);
+        return !Strings.isNullOrEmpty(ROLLUP_TAG)
+                && StreamEx.of(extensionContext.getTags()).anyMatch(ROLLUP_TAG::equalsIgnoreCase);
     }
 
 
-    private Table createTableIfMissing() {
-        var schema =
-                Schema.of(
-                        Field.of("branch_name", StandardSQLTypeName.STRING),
-                        Field.of("branch_tag", StandardSQLTypeName.STRING),
-                        Field.of("short_sha", StandardSQLTypeName.STRING),
-                        Field.of("computer_name", StandardSQLTypeName.STRING),
-                        Field.of("module_name", StandardSQLTypeName.STRING),
-                        Field.of("package_name", StandardSQLTypeName.STRING),
-                        Field.of("class_name", StandardSQLTypeName.STRING),
-                        Field.of("method_name", StandardSQLTypeName.STRING),
-                        Field.of("method_desc", StandardSQLTypeName.STRING),
-                        Field.of("start_time", StandardSQLTypeName.DATETIME),
-                        Field.of("end_time", StandardSQLTypeName.DATETIME),
-                        Field.of("duration", StandardSQLTypeName.INT64),
-                        Field.of("stdout", StandardSQLTypeName.STRING),
-                        Field.of("success", StandardSQLTypeName.BOOL),
-                        Field.newBuilder("tags", StandardSQLTypeName.STRING)
-                                .setMode(Field.Mode.REPEATED)
-                                .build(),
-                        Field.newBuilder("create_user", StandardSQLTypeName.STRING)
-                                .setDefaultValueExpression("SESSION_USER()")
-                                .build()
-                );
-        var tableId = TableId.of(DB_NAME, TABLE_NAME);
-        var tableDefinition = StandardTableDefinition.of(schema);
-        var existingTable = bigQuery.getTable(DB_NAME, TABLE_NAME);
-        if (existingTable == null || !existingTable.exists()) {
-            var tableInfo = TableInfo.newBuilder(tableId, tableDefinition).build();
-            return bigQuery.create(tableInfo);
-        } else {
-            new SchemaUpdates(this.bigQuery, DB_NAME, TABLE_NAME).synchSchema(schema);
-            return bigQuery.getTable(DB_NAME, TABLE_NAME);
-        }
+    @Override
+    public void interceptTestMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        wrap(invocation, invocationContext, extensionContext, InvocationInterceptor.super::interceptTestMethod, null);
     }
 
     @Override
-    public void interceptTestTemplateMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
-        wrap(invocation, invocationContext, extensionContext, InvocationInterceptor.super::interceptTestTemplateMethod);
+    public <T> T interceptTestClassConstructor(Invocation<T> invocation, ReflectiveInvocationContext<Constructor<T>> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        return timePhase(invocation, invocationContext, extensionContext, NodeType.CONSTRUCTOR);
     }
 
+    @Override
+    public void interceptBeforeAllMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        timePhase(invocation, invocationContext, extensionContext, NodeType.BEFORE_ALL);
+    }
 
     @Override
-    public void interceptTestMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
-        wrap(invocation, invocationContext, extensionContext, InvocationInterceptor.super::interceptTestMethod);
+    public void interceptBeforeEachMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        timePhase(invocation, invocationContext, extensionContext, NodeType.BEFORE_EACH);
+    }
+
+    @Override
+    public void interceptAfterEachMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        timePhase(invocation, invocationContext, extensionContext, NodeType.AFTER_EACH);
+    }
+
+    @Override
+    public void interceptAfterAllMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable {
+        timePhase(invocation, invocationContext, extensionContext, NodeType.AFTER_ALL);
+    }
+
+    /**
+     * Reports the time taken by a constructor or lifecycle method (TIMING_PHASES=true), as a row
+     * whose parent is the class or test it ran for.
+     */
+    private <T> T timePhase(Invocation<T> invocation, ReflectiveInvocationContext<? extends Executable> invocationContext, ExtensionContext extensionContext, NodeType phase) throws Throwable {
+        if (!TIMING_PHASES || !"true".equals(getPropValue("IS_CI"))) {
+            return invocation.proceed();
+        }
+        var startMillis = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            var result = invocation.proceed();
+            success = true;
+            return result;
+        } finally {
+            var executable = invocationContext.getExecutable();
+            var name = executable instanceof Constructor ? "<init>" : executable.getName();
+            var row = new TestResultRow(
+                    RUN_INFO,
+                    newRowId(),
+                    executable.getDeclaringClass().getPackageName(),
+                    executable.getDeclaringClass().getSimpleName(),
+                    name,
+                    "()",
+                    startMillis,
+                    System.currentTimeMillis(),
+                    success
+            );
+            var parentId = extensionContext.getUniqueId();
+            row.setNode(parentId + "/[" + phase.name().toLowerCase(Locale.ROOT) + ":" + name + "]", parentId, phase);
+            row.setTags(normalizeTags(extensionContext.getTags(), null));
+            var listener = TimingListener.getActive();
+            if (listener != null) {
+                listener.report(row);
+            } else {
+                if (this.pipeline == null) {
+                    lazyLoad();
+                }
+                enqueue(row);
+            }
+        }
     }
 
     @Override
     public void close() throws Throwable {
-        if (this.logInserter == null) {
+        if (this.pipeline == null) {
             // we get here when IS_CI != "true", which would mean that
             // we're not logging anything.
             return;
         }
-        this.messages.put(new HashMap<>());
-        this.logInserter.join();
+        // before waiting on the sink, which may be slow or unreachable
+        this.statistics.log();
+        if (!Strings.isNullOrEmpty(STATS_FILE)) {
+            try {
+                this.statistics.writeJson(new File(STATS_FILE));
+            } catch (IOException e) {
+                LOGGER.warn("Could not write test statistics to {}", STATS_FILE, e);
+            }
+        }
+        this.pipeline.close();
+        if (this.spool != null) {
+            this.spool.close();
+        }
+        if (collector) {
+            this.modules.forEach(this.pipeline::updateSummaries);
+        } else if (SUMMARY_UPDATE && !forwardToAggregator) {
+            this.pipeline.updateSummaries(MODULE_NAME);
+        }
+        ReporterMetrics.get().unregister();
+        if (this.messages.getDropped() > 0 || this.messages.getSpilled() > 0) {
+            LOGGER.warn("Insert queue overflowed ({}): {} rows dropped, {} rows spilled to disk",
+                    OVERFLOW_POLICY, this.messages.getDropped(), this.messages.getSpilled());
+        }
     }
 
     @Override
-    public void beforeAll(ExtensionContext context) {
+    public synchronized void beforeAll(ExtensionContext context) {
         if (!started) {
             started = true;
+            if ("true".equals(getPropValue("IS_CI")) && TimingListener.getActive() == null) {
+                lazyLoad();
+            }
             // Your "before all tests" startup logic goes here
             // The following line registers a callback hook when the root test context is shut down
             context.getRoot().getStore(GLOBAL).put("wait for BQ logging to complete", this);
@@ -226,79 +371,191 @@ public class BQTestInterceptor implements Extension, BeforeAllCallback, Invocati
         void accept(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext) throws Throwable;
     }
 
-    public void wrap(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext, Wrapped wrapped) throws Throwable {
+    public void wrap(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext, Wrapped wrapped, TemplateRollup rollup) throws Throwable {
         TagUtils.init();
-        if (!"true".equals(getPropValue("IS_CI"))) {
+        // with REPORT_MODE=listener, tests are reported by the TimingListener
+        if (!"true".equals(getPropValue("IS_CI")) || TimingListener.getActive() != null) {
             wrapped.accept(invocation, invocationContext, extensionContext);
             return;
         }
-        if (this.table == null) {
+        if (this.pipeline == null) {
             lazyLoad();
         }
-        var originalOut = System.out;
-        var originalErr = System.out;
-        var os = new org.apache.commons.io.output.ByteArrayOutputStream();
-        var newOut = new PrintStream(new TeeOutputStream(originalOut, os));
-        var newErr = new PrintStream(new TeeOutputStream(originalErr, os));
-        var startTime = Instant.now();
+        OutputCapture.install();
+        var os = newCaptureBuffer();
+        var capture = OutputCapture.begin(os);
+        var startMillis = System.currentTimeMillis();
+        var resourcesAtStart = PROFILE_RESOURCES ? ResourceProfiler.snapshot() : null;
         boolean success = false;
         try {
-            System.setOut(newOut);
-            System.setErr(newErr);
             wrapped.accept(invocation, invocationContext, extensionContext);
             success = true;
         } finally {
-            System.setOut(originalOut);
-            System.setErr(originalErr);
-            os.close();
-            logResult(invocationContext, extensionContext, startTime, success, os.toString(Charset.defaultCharset()));
-            TagUtils.remove();
+            var resources = resourcesAtStart == null ? null : ResourceProfiler.snapshot().since(resourcesAtStart);
+            OutputCapture.end(capture);
+            try {
+                logResult(invocationContext, extensionContext, startMillis, success, os, resources, rollup);
+            } finally {
+                os.close();
+                TagUtils.remove();
+            }
         }
     }
 
-    private void logResult(ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext, Instant startTime, boolean success, String stdout) throws InterruptedException {
-        var endTime = Instant.now().truncatedTo(ChronoUnit.MILLIS);
-        startTime = startTime.truncatedTo(ChronoUnit.MILLIS);
+    private static CaptureBuffer newCaptureBuffer() {
+        if (STDOUT_POLICY == StdoutPolicy.CAPPED) {
+            return new CaptureBuffer(STDOUT_MAX_KB * 512, STDOUT_MAX_KB * 512, false);
+        }
+        return new CaptureBuffer(STDOUT_MEMORY_KB * 512, STDOUT_MEMORY_KB * 512, true, STDOUT_SPILL_MAX_KB * 1024);
+    }
+
+    private void logResult(ReflectiveInvocationContext<Method> invocationContext, ExtensionContext extensionContext, long startMillis, boolean success, CaptureBuffer output, ResourceProfiler.Snapshot resources, TemplateRollup rollup) throws InterruptedException, IOException {
+        var endMillis = System.currentTimeMillis();
         var method = invocationContext.getExecutable();
-        String methodName = method.getName();
-        String methodDesc = "(" + (invocationContext.getArguments() == null || invocationContext.getArguments().isEmpty() ?
-                "" :
-                StreamEx.of(invocationContext.getArguments())
-                        .joining(",")) + ")";
-        var payload = new HashMap<String, Object>();
-        payload.put("branch_name", BRANCH_NAME);
-        payload.put("branch_tag", BRANCH_TAG);
-        payload.put("short_sha", SHORT_SHA);
-        payload.put("computer_name", COMPUTER_NAME);
-        payload.put("module_name", MODULE_NAME);
-        payload.put("package_name", method.getDeclaringClass().getPackageName());
-        payload.put("class_name", method.getDeclaringClass().getSimpleName());
-        payload.put("method_name", methodName);
-        payload.put("method_desc", methodDesc);
-        payload.put("start_time", StringUtils.chop(startTime.toString()));
-        payload.put("end_time", StringUtils.chop(endTime.toString()));
-        payload.put("duration", ChronoUnit.MILLIS.between(startTime, endTime));
-        payload.put("stdout", stdout);
-        payload.put("success", success);
-        var uniqueTags = StreamEx.of(extensionContext.getTags())
-                .append(TagUtils.getExtraTags())
-                .flatMap(s -> Arrays.stream(s.split(",")))
-                .map(StringUtils::normalizeSpace)
-                .map(StringUtils::toRootUpperCase)
-                .filter(StringUtils::isNotEmpty)
-                .sorted()
-                .distinct()
-                .toArray(new String[]{});
-        payload.put("tags", uniqueTags);
-        this.messages.put(payload);
+        var arguments = invocationContext.getArguments();
+        String methodDesc = arguments == null || arguments.isEmpty() ?
+                "()" :
+                StreamEx.of(arguments).joining(",", "(", ")");
+        var row = new TestResultRow(
+                RUN_INFO,
+                newRowId(),
+                method.getDeclaringClass().getPackageName(),
+                method.getDeclaringClass().getSimpleName(),
+                method.getName(),
+                methodDesc,
+                startMillis,
+                endMillis,
+                success
+        );
+        // rolled up invocations only keep the output of failures
+        var keepStdout = (STDOUT_POLICY != StdoutPolicy.ON_FAILURE && rollup == null) || !success;
+        row.setStdout(
+                keepStdout ? output.toString(Charset.defaultCharset()) : null,
+                output.size(),
+                keepStdout ? output.isTruncated() : output.size() > 0
+        );
+        if (resources != null) {
+            row.setResources(resources);
+        }
+        row.setTags(normalizeTags(extensionContext.getTags(), TagUtils.getExtraTags()));
+        row.setNode(extensionContext.getUniqueId(), extensionContext.getParent().map(ExtensionContext::getUniqueId).orElse(null), NodeType.TEST);
+        this.statistics.record(method.getDeclaringClass().getName(), method.getName() + methodDesc, endMillis - startMillis);
+        if (rollup != null) {
+            rollup.add(row);
+        } else {
+            enqueue(row);
+        }
+    }
 
+    /**
+     * @return the distinct, upper cased, sorted tags, with comma separated tags split.  Tags that
+     *         are already normalized are used as is, without copies.
+     */
+    /* package */ static String[] normalizeTags(Collection<String> tags, Collection<String> extraTags) {
+        boolean noTags = tags == null || tags.isEmpty();
+        if (noTags && (extraTags == null || extraTags.isEmpty())) {
+            return NO_TAGS;
+        }
+        var normalized = new ArrayList<String>();
+        addNormalizedTags(tags, normalized);
+        addNormalizedTags(extraTags, normalized);
+        if (normalized.isEmpty()) {
+            return NO_TAGS;
+        }
+        normalized.sort(null);
+        int distinct = 0;
+        for (String tag : normalized) {
+            if (distinct == 0 || !tag.equals(normalized.get(distinct - 1))) {
+                normalized.set(distinct++, tag);
+            }
+        }
+        return normalized.subList(0, distinct).toArray(NO_TAGS);
     }
 
-    private static String getModuleNameInternal() {
-        return new File(".").getAbsoluteFile().getParentFile().getName();
+    private static void addNormalizedTags(Collection<String> tags, List<String> normalized) {
+        if (tags == null) {
+            return;
+        }
+        for (String tag : tags) {
+            int start = 0;
+            while (start <= tag.length()) {
+                int end = tag.indexOf(',', start);
+                if (end < 0) {
+                    end = tag.length();
+                }
+                var one = normalizeTag(tag, start, end);
+                if (!one.isEmpty()) {
+                    normalized.add(one);
+                }
+                start = end + 1;
+            }
+        }
     }
 
+    private static String normalizeTag(String tags, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = tags.charAt(i);
+            if (Character.isWhitespace(c) && (c != ' ' || i == start || i == end - 1 || tags.charAt(i - 1) == ' ')) {
+                return StringUtils.toRootUpperCase(StringUtils.normalizeSpace(tags.substring(start, end)));
+            }
+        }
+        // substring and toUpperCase return the same string when there's nothing to change
+        return tags.substring(start, end).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Reports a row built outside of {@link #wrap}, e.g. by the {@link TimingListener}.
+     */
+    /* package */ void report(TestResultRow row) {
+        if (row.getNodeType() == NodeType.TEST) {
+            this.statistics.record(row.getPackageName() + "." + row.getClassName(), row.getMethodName() + StringUtils.defaultString(row.getMethodDesc()), row.getEndMillis() - row.getStartMillis());
+        }
+        enqueue(row);
+    }
+
+    /* package */ void enqueue(Map<String, Object> row) {
+        // before the row is queued, so it is recovered even if the sink never drains the queue
+        if (this.spool != null) {
+            this.spool.append(row);
+        }
+        if (collector && row.get("module_name") != null) {
+            this.modules.add((String) row.get("module_name"));
+        }
+        var event = new ReporterEvents.Enqueue();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            this.messages.put(row);
+        } catch (InterruptedException e) {
+            ExceptionUtils.rethrow(e);
+        }
+        ReporterMetrics.get().enqueued(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.queueDepth = this.messages.size();
+            event.commit();
+        }
+    }
+
+    /* package */ Set<String> getModules() {
+        return Collections.unmodifiableSet(this.modules);
+    }
+
+    /**
+     * A random (version 4) UUID, without going through the shared SecureRandom of UUID.randomUUID().
+     */
+    /* package */ static String newRowId() {
+        var random = ThreadLocalRandom.current();
+        long msb = (random.nextLong() & ~0xf000L) | 0x4000L;
+        long lsb = (random.nextLong() & ~(0xc000L << 48)) | (0x8000L << 48);
+        return new UUID(msb, lsb).toString();
+    }
+
+
     /* package */ static String getBranchTag(String name) {
+        if (name == null) {
+            return null;
+        }
         var branchName = name.toLowerCase();
         var matcher = Pattern.compile("([a-z]+-\\d+)").matcher(branchName);
         if (matcher.find()) {
@@ -308,34 +565,12 @@ public class BQTestInterceptor implements Extension, BeforeAllCallback, Invocati
         }
     }
 
-    private static String getFromEnvOrGit(String env, String gitCmd) {
+    private static String getFromEnvOrGit(String env, String fromGit) {
         var propValue = getPropValue(env);
         if (!Strings.isNullOrEmpty(propValue)) {
             return propValue;
         }
-        try {
-            //noinspection deprecation
-            Process process = Runtime.getRuntime().exec(gitCmd);
-            process.waitFor();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            return reader.readLine();
-        } catch (IOException | InterruptedException e) {
-            return ExceptionUtils.rethrow(e);
-        }
-    }
-
-    private static String getPropValue(String env) {
-        return getPropValue(env, null);
-    }
-    private static String getPropValue(String env, String defaultValue) {
-        return StreamEx.of(
-                System.getProperty("dbunitreporter_" + env),
-                System.getenv("dbunitreporter_" + env),
-                System.getProperty(env),
-                System.getenv(env)
-        ).filter(StringUtils::isNotEmpty)
-         .findFirst()
-         .orElse(defaultValue);
+        return fromGit;
     }
 
     private static String getComputerName()
@@ -0,0 +1,284 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.StreamEx;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Drains a {@link RowQueue} into batches (bounded by row count, payload size and linger time)
+ * and hands them to a pool of senders, so several batches can be in flight at once.  Rows are
+ * left in the queue until the sink has finished opening; if it takes longer than
+ * SINK_OPEN_TIMEOUT_MS, they are discarded instead, so a hung bootstrap can't stall shutdown.
+ */
+/* package */ class BatchPipeline {
+    private static final Logger LOGGER = LogManager.getLogger(BatchPipeline.class);
+
+    private final RowQueue queue;
+    private final CompletableFuture<ResultSink> openedSink;
+    private volatile ResultSink sink;
+    private final Spool spool;
+    private final int maxRows;
+    private final long maxBytes;
+    private final long lingerMs;
+    private final ExecutorService senders;
+    private final Semaphore inFlight;
+    private final AtomicLong numberOfRows = new AtomicLong();
+    private final Thread batcher;
+    private long openTimeoutMs = Long.parseLong(getPropValue("SINK_OPEN_TIMEOUT_MS", "120000"));
+
+    /* package */ BatchPipeline(RowQueue queue, CompletableFuture<ResultSink> openedSink, Spool spool, int maxRows, long maxBytes, long lingerMs, ExecutorService senders, int maxInFlight) {
+        this.queue = queue;
+        this.openedSink = openedSink;
+        this.spool = spool;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.lingerMs = lingerMs;
+        this.senders = senders;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.batcher = new Thread(this::continuouslyBatch, "logInserter");
+        this.batcher.setDaemon(true);
+    }
+
+    /**
+     * @param kind      "virtual" to use a virtual thread per batch (when the JVM supports them),
+     *                  anything else for a fixed pool of platform threads.
+     */
+    /* package */ static ExecutorService newSenderExecutor(String kind, int threads) {
+        if ("virtual".equalsIgnoreCase(kind)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Virtual threads are not available in this JVM. Using {} platform threads instead.", threads);
+            }
+        }
+        var counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "logSender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /* package */ void setOpenTimeoutMs(long openTimeoutMs) {
+        this.openTimeoutMs = openTimeoutMs;
+    }
+
+    public void start() {
+        LOGGER.trace("Started LogInserter Thread");
+        this.batcher.start();
+    }
+
+    private void continuouslyBatch() {
+        var recovered = recover().iterator();
+        try {
+            this.sink = this.openedSink.get(openTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CancellationException | TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // the bootstrap closes the sink if it ever finishes opening it
+            this.openedSink.cancel(false);
+            LOGGER.error("Could not start logging of test results. They will be sent by the next run, if spooling is enabled.", e);
+            discardAll();
+            return;
+        }
+        if (this.spool != null) {
+            this.sink.setCommitListener(this.spool::ack);
+        }
+        var batch = new ArrayList<Map<String, Object>>();
+        long batchBytes = 0;
+        long batchStart = 0;
+        while (true) {
+            var next = recovered.hasNext() ? recovered.next() : poll();
+            boolean finished = next == null && this.queue.isDrained();
+            if (next != null) {
+                long rowBytes = estimateBytes(next);
+                if (!batch.isEmpty() && batchBytes + rowBytes > maxBytes) {
+                    submit(batch, batchBytes);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                if (batch.isEmpty()) {
+                    batchStart = System.nanoTime();
+                }
+                batch.add(next);
+                batchBytes += rowBytes;
+            }
+            boolean full = batch.size() >= maxRows || batchBytes >= maxBytes;
+            boolean lingered = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart) >= lingerMs;
+            if (!batch.isEmpty() && (full || lingered || finished)) {
+                submit(batch, batchBytes);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            if (finished) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rows left unsent by previous runs, recovered before the sink is opened.  They are already
+     * in this run's spool.
+     */
+    private List<Map<String, Object>> recover() {
+        if (this.spool == null) {
+            return List.of();
+        }
+        var recovered = new ArrayList<Map<String, Object>>();
+        this.spool.recoverInto(recovered::add);
+        if (!recovered.isEmpty()) {
+            LOGGER.info("Recovered {} test results left unsent by a previous run", recovered.size());
+        }
+        return recovered;
+    }
+
+    private Map<String, Object> poll() {
+        return this.queue.poll(100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keeps the queue moving (so tests are never blocked by it) when there is nowhere to send rows.
+     * They are still spooled, to be sent by the next run.
+     */
+    private void discardAll() {
+        while (poll() != null || !this.queue.isDrained()) {
+            // discard
+        }
+    }
+
+    private void submit(List<Map<String, Object>> batch, long batchBytes) {
+        this.inFlight.acquireUninterruptibly();
+        this.numberOfRows.addAndGet(batch.size());
+        try {
+            this.senders.execute(() -> {
+                var event = new ReporterEvents.Batch();
+                event.begin();
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    this.sink.write(batch);
+                    success = true;
+                    ReporterMetrics.get().batchSent(batch.size(), batchBytes, System.nanoTime() - start);
+                    written(batch);
+                } catch (PartialWriteException e) {
+                    ReporterMetrics.get().rowErrors(e.getRowIds().size());
+                    LOGGER.warn("{} of a batch of {} test results could not be inserted", e.getRowIds().size(), batch.size(), e);
+                    // the rows that failed stay in the spool, to be sent by the next run
+                    written(StreamEx.of(batch).remove(row -> e.getRowIds().contains((String) row.get("row_id"))).toList());
+                } catch (Exception e) {
+                    ReporterMetrics.get().batchFailed(batch.size());
+                    LOGGER.warn("Failed to insert a batch of {} test results", batch.size(), e);
+                } finally {
+                    this.inFlight.release();
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.sink = this.sink.getName();
+                        event.rows = batch.size();
+                        event.bytes = batchBytes;
+                        event.success = success;
+                        event.commit();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            this.inFlight.release();
+            throw e;
+        }
+    }
+
+    private void written(List<Map<String, Object>> batch) {
+        // otherwise, the sink tells the spool what it committed
+        if (this.spool != null && !this.sink.commitsOnClose()) {
+            this.spool.ack(StreamEx.of(batch).map(row -> (String) row.get("row_id")).toList());
+        }
+    }
+
+    /**
+     * Once the pipeline is closed, updates the summaries the sink keeps.
+     */
+    public void updateSummaries(String moduleName) {
+        if (this.sink == null) {
+            return;
+        }
+        try {
+            this.sink.updateSummaries(moduleName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to update the summaries of test results", e);
+        }
+    }
+
+    /**
+     * Rough size of the row once serialized, used to keep requests under the sink's payload limit.
+     */
+    /* package */ static long estimateBytes(Map<String, Object> row) {
+        if (row instanceof TestResultRow) {
+            return ((TestResultRow) row).estimateBytes();
+        }
+        long bytes = 2;
+        for (var entry : row.entrySet()) {
+            bytes += entry.getKey().length() + 4L + estimateBytes(entry.getValue());
+        }
+        return bytes;
+    }
+
+    /* package */ static long estimateBytes(Object value) {
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 2L;
+        }
+        if (value instanceof Object[]) {
+            long bytes = 2;
+            for (Object o : (Object[]) value) {
+                bytes += estimateBytes(o) + 1;
+            }
+            return bytes;
+        }
+        return 8;
+    }
+
+    /**
+     * Waits for every queued row to be batched and every batch to be sent.
+     */
+    public void close() throws InterruptedException {
+        this.queue.close();
+        this.batcher.join();
+        this.senders.shutdown();
+        if (!this.senders.awaitTermination(5, TimeUnit.MINUTES)) {
+            LOGGER.warn("Timed out waiting for test results to be sent");
+        }
+        if (this.sink == null) {
+            return;
+        }
+        try {
+            this.sink.close();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to complete sending of test results", e);
+        }
+        var metrics = ReporterMetrics.get();
+        LOGGER.info("Logging of test results complete. {} tests reported in {} batches (average of {} rows, insert latency p99 {} ms); {} rows retried, {} rows failed",
+                numberOfRows.get(),
+                metrics.getBatchesSent() + metrics.getBatchesFailed(),
+                Math.round(metrics.getAverageBatchRows()),
+                metrics.getInsertLatencyP99Ms(),
+                metrics.getRetries(),
+                metrics.getRowErrors());
+    }
+}
@@ -0,0 +1,101 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.*;
+import one.util.streamex.StreamEx;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams batches of rows with insertAll.  When only some rows of a request fail, only those
+ * are retried (with exponential backoff), and only if the error says a retry could help.
+ * Each row's row_id is used as its insertId, so BigQuery can discard rows sent twice.
+ */
+/* package */ class BigQueryInserter {
+    private static final Logger LOGGER = LogManager.getLogger(BigQueryInserter.class);
+    private static final Set<String> RETRYABLE_REASONS = Set.of("backendError", "internalError", "rateLimitExceeded", "stopped", "timeout");
+
+    private final BigQuery bigQuery;
+    private final TableId tableId;
+    private final int maxRetries;
+    private final long backoffMs;
+
+    /* package */ BigQueryInserter(BigQuery bigQuery, TableId tableId, int maxRetries, long backoffMs) {
+        this.bigQuery = bigQuery;
+        this.tableId = tableId;
+        this.maxRetries = maxRetries;
+        this.backoffMs = backoffMs;
+    }
+
+    /**
+     * @throws PartialWriteException    listing the rows that still failed once retries were
+     *                                  used up.  Rows rejected with a non-retryable error aren't
+     *                                  part of it: sending them again wouldn't help.
+     */
+    public void write(List<Map<String, Object>> batch) throws InterruptedException, PartialWriteException {
+        var pending = StreamEx.of(batch)
+                .map(row -> InsertAllRequest.RowToInsert.of((String) row.get("row_id"), row))
+                .toList();
+        for (int attempt = 0; ; attempt++) {
+            var failed = insert(pending);
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (attempt >= maxRetries) {
+                throw new PartialWriteException(
+                        "Giving up on inserting " + failed.size() + " test results into bigquery table " + tableId.getTable() + " after " + (attempt + 1) + " attempts",
+                        StreamEx.of(failed).map(InsertAllRequest.RowToInsert::getId).toSet());
+            }
+            ReporterMetrics.get().retried(failed.size());
+            var event = new ReporterEvents.Retry();
+            if (event.shouldCommit()) {
+                event.rows = failed.size();
+                event.attempt = attempt + 1;
+                event.commit();
+            }
+            Thread.sleep(backoffMs << attempt);
+            pending = failed;
+        }
+    }
+
+    /**
+     * @return the rows that failed, and that are worth retrying.
+     */
+    private List<InsertAllRequest.RowToInsert> insert(List<InsertAllRequest.RowToInsert> rows) {
+        InsertAllResponse response;
+        try {
+            response = this.bigQuery.insertAll(InsertAllRequest.newBuilder(tableId).setRows(rows).build());
+        } catch (BigQueryException e) {
+            if (!e.isRetryable()) {
+                throw e;
+            }
+            LOGGER.debug("Retryable error inserting {} test results", rows.size(), e);
+            return rows;
+        }
+        var retry = new ArrayList<InsertAllRequest.RowToInsert>();
+        if (!response.hasErrors()) {
+            return retry;
+        }
+        boolean warned = false;
+        for (var entry : response.getInsertErrors().entrySet()) {
+            if (StreamEx.of(entry.getValue()).allMatch(e -> RETRYABLE_REASONS.contains(e.getReason()))) {
+                retry.add(rows.get(entry.getKey().intValue()));
+            } else {
+                ReporterMetrics.get().rowErrors(1);
+                if (!warned) {
+                    LOGGER.warn("Failed to insert some test results into bigquery table {}.{}. See errors below.", tableId.getDataset(), tableId.getTable());
+                    warned = true;
+                }
+                StreamEx.of(entry.getValue())
+                        .remove(e -> "stopped".equals(e.getReason()))
+                        .map(BigQueryError::getMessage)
+                        .forEach(LOGGER::warn);
+            }
+        }
+        return retry;
+    }
+}
@@ -0,0 +1,207 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.auth.oauth2.ImpersonatedCredentials;
+import com.google.cloud.bigquery.*;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Streams results into BigQuery with insertAll (SINK=insertAll, the default).
+ */
+public class BigQueryResultSink implements ResultSink {
+    private static final Logger LOGGER = LogManager.getLogger(BigQueryResultSink.class);
+
+    private final SchemaCache schemaCache = new SchemaCache(new File(getPropValue("SCHEMA_CACHE_DIR",
+            new File(System.getProperty("user.home"), ".cache/db-unit-reporter").getPath())));
+    private BigQuery bigQuery;
+    private GoogleCredentials credentials;
+    private TableId tableId;
+    private BigQueryInserter inserter;
+    private DailySummary summary;
+
+    @Override
+    public String getName() {
+        return "insertAll";
+    }
+
+    @Override
+    public void open(String dbName, String tableName, Schema schema) throws IOException, InterruptedException {
+        connect();
+        var admin = new BigQueryTableAdminClient(this.bigQuery);
+        this.tableId = createTableIfMissing(admin, dbName, tableName, schema);
+        if (Boolean.parseBoolean(getPropValue("SUMMARY", "true"))) {
+            this.summary = createSummaryIfMissing(admin, dbName, tableName);
+        }
+        this.inserter = new BigQueryInserter(
+                this.bigQuery,
+                this.tableId,
+                Integer.parseInt(getPropValue("INSERT_MAX_RETRIES", "5")),
+                Long.parseLong(getPropValue("INSERT_BACKOFF_MS", "200"))
+        );
+    }
+
+    private void connect() throws IOException {
+        var projectId = getPropValue("PROJECT_ID");
+        var toImpersonate = getPropValue("GOOGLE_IMPERSONATE_SERVICE_ACCOUNT");
+        LOGGER.info("Logging test results to BigQuery project_id={} impersonate={}", projectId, toImpersonate);
+        var builder = BigQueryOptions.newBuilder();
+        if (!StringUtils.isEmpty(projectId)) {
+            builder.setProjectId(projectId);
+        }
+        GoogleCredentials base = GoogleCredentials.getApplicationDefault();
+        if (!StringUtils.isEmpty(toImpersonate)) {
+            LOGGER.debug("google_impersonate_service_account={}", toImpersonate);
+            base = ImpersonatedCredentials.create(
+                    base,
+                    toImpersonate,
+                    Collections.emptyList(),
+                    ImmutableList.<String>builder()
+                            .add("https://www.googleapis.com/auth/cloud-platform")
+                            .add("https://www.googleapis.com/auth/datastore")
+                            .build(),
+                    0
+            );
+        }
+        builder.setCredentials(base);
+        this.credentials = base;
+        this.bigQuery = builder.build().getService();
+    }
+
+    private TableId createTableIfMissing(TableAdminClient admin, String dbName, String tableName, Schema schema) throws InterruptedException {
+        var tableId = TableId.of(dbName, tableName);
+        var tableDefinition = SchemaUpdates.newDefinition(schema);
+        if (schemaCache.isCurrent(getCacheKey(dbName, tableName), tableDefinition)) {
+            LOGGER.debug("Schema of {}.{} unchanged since last run", dbName, tableName);
+            return tableId;
+        }
+        var existingTable = admin.getTable(tableId);
+        TableInfo table;
+        if (existingTable == null) {
+            var tableInfo = TableInfo.newBuilder(tableId, tableDefinition).build();
+            table = admin.create(tableInfo);
+        } else {
+            var updates = new SchemaUpdates(admin, bigQuery.getOptions().getProjectId(), dbName, tableName);
+            try {
+                table = updates.synchLayout(existingTable, Boolean.parseBoolean(getPropValue("MIGRATE_PARTITIONING", "false")));
+            } catch (BigQueryException e) {
+                LOGGER.warn("Could not migrate {}.{} to a partitioned table", dbName, tableName, e);
+                table = existingTable;
+            }
+            table = updates.synchSchema(table, schema);
+        }
+        // until it is partitioned, keep checking (and warning about) the table
+        if (SchemaUpdates.isPartitioned(table)) {
+            schemaCache.update(getCacheKey(dbName, tableName), tableDefinition);
+        }
+        return table.getTableId();
+    }
+
+    private DailySummary createSummaryIfMissing(TableAdminClient admin, String dbName, String tableName) {
+        var summaryTable = getPropValue("SUMMARY_TABLE", tableName + "_daily");
+        var dailySummary = new DailySummary(admin, bigQuery.getOptions().getProjectId(), dbName, tableName, summaryTable);
+        if (schemaCache.isCurrent(getCacheKey(dbName, summaryTable), DailySummary.newDefinition())) {
+            return dailySummary;
+        }
+        try {
+            dailySummary.synchTable();
+            schemaCache.update(getCacheKey(dbName, summaryTable), DailySummary.newDefinition());
+            return dailySummary;
+        } catch (BigQueryException | InterruptedException e) {
+            LOGGER.warn("Could not create summary table {}.{}; daily summaries won't be updated", dbName, summaryTable, e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    private String getCacheKey(String dbName, String tableName) {
+        return bigQuery.getOptions().getProjectId() + "." + dbName + "." + tableName;
+    }
+
+    @Override
+    public void write(List<Map<String, Object>> batch) throws Exception {
+        try {
+            this.inserter.write(batch);
+        } catch (BigQueryException e) {
+            if (e.getCode() == 404) {
+                // the table went away, so what we remember about its schema is wrong
+                schemaCache.invalidate(getCacheKey(tableId.getDataset(), tableId.getTable()));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Updates the daily summary with the results of the module, now that they have all been sent.
+     */
+    @Override
+    public void updateSummaries(String moduleName) throws InterruptedException {
+        if (summary == null) {
+            return;
+        }
+        try {
+            summary.update(moduleName, Integer.parseInt(getPropValue("SUMMARY_DAYS", "1")));
+        } catch (BigQueryException e) {
+            LOGGER.warn("Could not update daily summary {}", summary.getTableId(), e);
+        }
+    }
+
+    @Override
+    public List<TestStats> readHistory(String dbName, String tableName, String moduleName, int days) throws IOException, InterruptedException {
+        if (bigQuery == null) {
+            connect();
+        }
+        var query = QueryJobConfiguration.newBuilder(
+                        "SELECT package_name, class_name, method_name, COUNT(*) AS runs, " +
+                        "COUNTIF(NOT success) AS failures, " +
+                        "APPROX_QUANTILES(duration, 2)[OFFSET(1)] AS median_duration, " +
+                        "UNIX_MILLIS(TIMESTAMP(MAX(IF(success, NULL, end_time)))) AS last_failure " +
+                        "FROM `" + bigQuery.getOptions().getProjectId() + "." + dbName + "." + tableName + "` " +
+                        "WHERE module_name = @module AND start_time >= DATETIME_SUB(CURRENT_DATETIME(), INTERVAL @days DAY) " +
+                        "AND " + NodeType.TESTS_ONLY_SQL + " " +
+                        "GROUP BY package_name, class_name, method_name")
+                .addNamedParameter("module", QueryParameterValue.string(moduleName))
+                .addNamedParameter("days", QueryParameterValue.int64(days))
+                .setUseLegacySql(false)
+                .build();
+        var stats = new ArrayList<TestStats>();
+        for (FieldValueList row : bigQuery.query(query).iterateAll()) {
+            var lastFailure = row.get("last_failure");
+            stats.add(new TestStats(
+                    row.get("package_name").getStringValue(),
+                    row.get("class_name").getStringValue(),
+                    row.get("method_name").getStringValue(),
+                    row.get("runs").getLongValue(),
+                    row.get("failures").getLongValue(),
+                    row.get("median_duration").isNull() ? 0 : row.get("median_duration").getLongValue(),
+                    lastFailure.isNull() ? -1 : lastFailure.getLongValue()
+            ));
+        }
+        return stats;
+    }
+
+    protected BigQuery getBigQuery() {
+        return bigQuery;
+    }
+
+    protected GoogleCredentials getCredentials() {
+        return credentials;
+    }
+
+    protected TableId getTableId() {
+        return tableId;
+    }
+}
@@ -0,0 +1,37 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.TableInfo;
+
+/**
+ * {@link TableAdminClient} backed by the real BigQuery client.
+ */
+/* package */ class BigQueryTableAdminClient implements TableAdminClient {
+    private final BigQuery bigQuery;
+
+    /* package */ BigQueryTableAdminClient(BigQuery bigQuery) {
+        this.bigQuery = bigQuery;
+    }
+
+    @Override
+    public TableInfo getTable(TableId table) {
+        return bigQuery.getTable(table);
+    }
+
+    @Override
+    public TableInfo create(TableInfo table) {
+        return bigQuery.create(table);
+    }
+
+    @Override
+    public TableInfo update(TableInfo table) {
+        return bigQuery.update(table);
+    }
+
+    @Override
+    public void execute(QueryJobConfiguration statement) throws InterruptedException {
+        bigQuery.query(statement);
+    }
+}
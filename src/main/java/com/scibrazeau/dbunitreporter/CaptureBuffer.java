@@ -0,0 +1,217 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * A capture buffer with a fixed memory budget.  The first bytes written are kept in a head
+ * segment and the most recent ones in a tail ring.  Whatever falls out of the ring (the middle)
+ * is either appended to a temp file, so it can be reassembled later, or discarded.  Both
+ * segments grow as needed, so tests that print little only cost a little.  At most a given
+ * number of spilled bytes are read back (the beginning and the end of the middle), so huge
+ * outputs don't end up on the heap after all.
+ */
+/* package */ class CaptureBuffer extends OutputStream {
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_GROWTH = 256;
+
+    private final int headBytes;
+    private final int tailBytes;
+    private byte[] head = EMPTY;
+    private byte[] tail = EMPTY;
+    private final boolean spillMiddle;
+    private final long readBackBytes;
+    private final byte[] single = new byte[1];
+    private int headLen;
+    private int tailStart;
+    private int tailLen;
+    private long size;
+    private File spillFile;
+    private OutputStream spill;
+
+    /* package */ CaptureBuffer(int headBytes, int tailBytes, boolean spillMiddle) {
+        this(headBytes, tailBytes, spillMiddle, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param readBackBytes how much of the spilled middle {@link #toString(Charset)} returns.
+     */
+    /* package */ CaptureBuffer(int headBytes, int tailBytes, boolean spillMiddle, long readBackBytes) {
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+        this.spillMiddle = spillMiddle;
+        this.readBackBytes = readBackBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        size += len;
+        int toHead = Math.min(len, headBytes - headLen);
+        if (toHead > 0) {
+            if (headLen + toHead > head.length) {
+                head = Arrays.copyOf(head, grow(head.length, headLen + toHead, headBytes));
+            }
+            System.arraycopy(b, off, head, headLen, toHead);
+            headLen += toHead;
+            off += toHead;
+            len -= toHead;
+        }
+        if (len > 0) {
+            writeTail(b, off, len);
+        }
+    }
+
+    private static int grow(int current, int needed, int max) {
+        return Math.min(max, Math.max(needed, Math.max(MIN_GROWTH, current * 2)));
+    }
+
+    private void writeTail(byte[] b, int off, int len) throws IOException {
+        int cap = tailBytes;
+        if (len >= cap) {
+            evict(tailLen);
+            if (tail.length < cap) {
+                tail = new byte[cap];
+            }
+            spill(b, off, len - cap);
+            System.arraycopy(b, off + len - cap, tail, 0, cap);
+            tailStart = 0;
+            tailLen = cap;
+            return;
+        }
+        if (tailLen + len > tail.length && tail.length < cap) {
+            growTail(grow(tail.length, tailLen + len, cap));
+        }
+        int overflow = tailLen + len - cap;
+        if (overflow > 0) {
+            evict(overflow);
+        }
+        int end = (tailStart + tailLen) % tail.length;
+        int first = Math.min(len, tail.length - end);
+        System.arraycopy(b, off, tail, end, first);
+        System.arraycopy(b, off + first, tail, 0, len - first);
+        tailLen += len;
+    }
+
+    /**
+     * Reallocates the tail ring, with its oldest byte first.
+     */
+    private void growTail(int length) {
+        var grown = new byte[length];
+        int first = Math.min(tailLen, tail.length - tailStart);
+        System.arraycopy(tail, tailStart, grown, 0, first);
+        System.arraycopy(tail, 0, grown, first, tailLen - first);
+        tail = grown;
+        tailStart = 0;
+    }
+
+    /**
+     * Moves the n oldest bytes of the tail ring into the middle.
+     */
+    private void evict(int n) throws IOException {
+        if (n == 0) {
+            return;
+        }
+        int first = Math.min(n, tail.length - tailStart);
+        spill(tail, tailStart, first);
+        spill(tail, 0, n - first);
+        tailStart = (tailStart + n) % tail.length;
+        tailLen -= n;
+    }
+
+    private void spill(byte[] b, int off, int len) throws IOException {
+        if (!spillMiddle || len == 0) {
+            return;
+        }
+        if (spill == null) {
+            spillFile = Files.createTempFile("dbunitreporter-", ".out").toFile();
+            spill = new BufferedOutputStream(new FileOutputStream(spillFile));
+        }
+        spill.write(b, off, len);
+    }
+
+    /**
+     * @return the number of bytes that were written, including the ones that were not kept.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if some of the output written was discarded.
+     */
+    public boolean isTruncated() {
+        return getMiddleSize() > (spillMiddle ? readBackBytes : 0);
+    }
+
+    private long getMiddleSize() {
+        return size - headLen - tailLen;
+    }
+
+    public String toString(Charset charset) throws IOException {
+        if (size == 0) {
+            return "";
+        }
+        long middle = spill == null ? 0 : Math.min(getMiddleSize(), readBackBytes);
+        var out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 64, headLen + tailLen + middle + 64));
+        out.write(head, 0, headLen);
+        if (spill != null) {
+            spill.flush();
+            readBack(out, charset);
+        } else if (isTruncated()) {
+            out.write(String.format("%n... [%d bytes truncated] ...%n", getMiddleSize()).getBytes(charset));
+        }
+        int first = Math.min(tailLen, tail.length - tailStart);
+        out.write(tail, tailStart, first);
+        out.write(tail, 0, tailLen - first);
+        return out.toString(charset);
+    }
+
+    /**
+     * Copies the spilled middle, or its beginning and end if it is over readBackBytes.
+     */
+    private void readBack(OutputStream out, Charset charset) throws IOException {
+        long middle = getMiddleSize();
+        if (middle <= readBackBytes) {
+            FileUtils.copyFile(spillFile, out);
+            return;
+        }
+        try (var file = new RandomAccessFile(spillFile, "r")) {
+            var buffer = new byte[(int) Math.min(8192, readBackBytes)];
+            long first = readBackBytes / 2;
+            copy(file, 0, first, buffer, out);
+            out.write(String.format("%n... [%d bytes truncated] ...%n", middle - readBackBytes).getBytes(charset));
+            copy(file, middle - (readBackBytes - first), readBackBytes - first, buffer, out);
+        }
+    }
+
+    private static void copy(RandomAccessFile file, long position, long length, byte[] buffer, OutputStream out) throws IOException {
+        file.seek(position);
+        while (length > 0) {
+            int read = file.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new EOFException("Spilled output is shorter than expected");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            Files.deleteIfExists(spillFile.toPath());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.*;
+
+import java.util.List;
+
+/**
+ * A table of statistics per test and per day (runs, failures, pass rate, duration percentiles),
+ * kept up to date from the result table at the end of each build so dashboards don't need to scan
+ * every result (SUMMARY_TABLE, {table}_daily by default).  Rolled up template invocations count
+ * as one run each.  Only one JVM of the build should run the update, since concurrent MERGE
+ * statements on a table conflict: the fork collector when there is one (forks never do), or
+ * else every JVM unless SUMMARY_UPDATE=false, which builds with several forks and no collector
+ * should set on all but one of them.
+ */
+/* package */ class DailySummary {
+    private static final List<String> KEY_COLUMNS = List.of("day", "branch_tag", "module_name", "package_name", "class_name", "method_name");
+    private static final List<String> PERCENTILES = List.of("50", "90", "95", "99");
+
+    private final TableAdminClient client;
+    private final String projectId;
+    private final String dbName;
+    private final String resultTable;
+    private final String summaryTable;
+
+    /* package */ DailySummary(TableAdminClient client, String projectId, String dbName, String resultTable, String summaryTable) {
+        this.client = client;
+        this.projectId = projectId;
+        this.dbName = dbName;
+        this.resultTable = resultTable;
+        this.summaryTable = summaryTable;
+    }
+
+    /* package */ static Schema getSchema() {
+        return Schema.of(
+                Field.of("day", StandardSQLTypeName.DATE),
+                Field.of("branch_tag", StandardSQLTypeName.STRING),
+                Field.of("module_name", StandardSQLTypeName.STRING),
+                Field.of("package_name", StandardSQLTypeName.STRING),
+                Field.of("class_name", StandardSQLTypeName.STRING),
+                Field.of("method_name", StandardSQLTypeName.STRING),
+                Field.of("runs", StandardSQLTypeName.INT64),
+                Field.of("failures", StandardSQLTypeName.INT64),
+                Field.of("pass_rate", StandardSQLTypeName.FLOAT64),
+                Field.of("p50_duration", StandardSQLTypeName.INT64),
+                Field.of("p90_duration", StandardSQLTypeName.INT64),
+                Field.of("p95_duration", StandardSQLTypeName.INT64),
+                Field.of("p99_duration", StandardSQLTypeName.INT64),
+                Field.of("max_duration", StandardSQLTypeName.INT64),
+                Field.of("updated_at", StandardSQLTypeName.TIMESTAMP)
+        );
+    }
+
+    /* package */ static StandardTableDefinition newDefinition() {
+        return StandardTableDefinition.newBuilder()
+                .setSchema(getSchema())
+                .setTimePartitioning(TimePartitioning.newBuilder(TimePartitioning.Type.DAY)
+                        .setField("day")
+                        .build())
+                .setClustering(Clustering.newBuilder().setFields(SchemaUpdates.CLUSTERING_FIELDS).build())
+                .build();
+    }
+
+    public TableId getTableId() {
+        return TableId.of(dbName, summaryTable);
+    }
+
+    /**
+     * Creates the summary table if it is missing, or adds any column it lacks.
+     */
+    public void synchTable() throws InterruptedException {
+        var existing = client.getTable(getTableId());
+        if (existing == null) {
+            client.create(TableInfo.newBuilder(getTableId(), newDefinition()).build());
+        } else {
+            new SchemaUpdates(client, projectId, dbName, summaryTable).synchSchema(existing, getSchema());
+        }
+    }
+
+    private String qualifiedName(String table) {
+        return "`" + projectId + "." + dbName + "." + table + "`";
+    }
+
+    /**
+     * @return a MERGE recomputing the statistics of a module, for today and the given number of
+     *         previous days, from the result table.  Only those partitions of both tables are read.
+     */
+    /* package */ QueryJobConfiguration mergeStatement(String moduleName, int days) {
+        var sql = new StringBuilder()
+                .append("MERGE ").append(qualifiedName(summaryTable)).append(" T\n")
+                .append("USING (\n")
+                .append("  SELECT DATE(start_time) AS day, branch_tag, module_name, package_name, class_name, method_name,\n")
+                .append("    SUM(IFNULL(invocations, 1)) AS runs,\n")
+                .append("    SUM(IFNULL(failures, IF(success, 0, 1))) AS failures,\n")
+                .append("    APPROX_QUANTILES(IFNULL(mean_duration, duration), 100) AS quantiles,\n")
+                .append("    MAX(IFNULL(max_duration, duration)) AS max_duration\n")
+                .append("  FROM ").append(qualifiedName(resultTable)).append('\n')
+                .append("  WHERE module_name = @module AND start_time >= DATETIME(DATE_SUB(CURRENT_DATE(), INTERVAL @days DAY))\n")
+                .append("    AND ").append(NodeType.TESTS_ONLY_SQL).append('\n')
+                .append("  GROUP BY ").append(String.join(", ", KEY_COLUMNS)).append('\n')
+                .append(") S\n")
+                .append("ON T.day >= DATE_SUB(CURRENT_DATE(), INTERVAL @days DAY) AND T.day = S.day");
+        for (String column : KEY_COLUMNS.subList(1, KEY_COLUMNS.size())) {
+            sql.append(" AND T.").append(column).append(" IS NOT DISTINCT FROM S.").append(column);
+        }
+        sql.append("\nWHEN MATCHED THEN UPDATE SET runs = S.runs, failures = S.failures, pass_rate = 1 - S.failures / S.runs");
+        for (String percentile : PERCENTILES) {
+            sql.append(", p").append(percentile).append("_duration = S.quantiles[OFFSET(").append(percentile).append(")]");
+        }
+        sql.append(", max_duration = S.max_duration, updated_at = CURRENT_TIMESTAMP()\n");
+        sql.append("WHEN NOT MATCHED THEN INSERT (").append(String.join(", ", KEY_COLUMNS)).append(", runs, failures, pass_rate");
+        for (String percentile : PERCENTILES) {
+            sql.append(", p").append(percentile).append("_duration");
+        }
+        sql.append(", max_duration, updated_at)\n  VALUES (S.").append(String.join(", S.", KEY_COLUMNS)).append(", S.runs, S.failures, 1 - S.failures / S.runs");
+        for (String percentile : PERCENTILES) {
+            sql.append(", S.quantiles[OFFSET(").append(percentile).append(")]");
+        }
+        sql.append(", S.max_duration, CURRENT_TIMESTAMP())");
+        return QueryJobConfiguration.newBuilder(sql.toString())
+                .addNamedParameter("module", QueryParameterValue.string(moduleName))
+                .addNamedParameter("days", QueryParameterValue.int64(days))
+                .setUseLegacySql(false)
+                .build();
+    }
+
+    /**
+     * Recomputes the statistics of a module for today and the given number of previous days.
+     */
+    public void update(String moduleName, int days) throws InterruptedException {
+        client.execute(mergeStatement(moduleName, days));
+    }
+}
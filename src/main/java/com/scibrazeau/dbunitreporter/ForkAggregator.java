@@ -0,0 +1,177 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Collects the results of every test JVM of a build (e.g. Surefire forks), so they are batched
+ * and sent by a single reporter: one connection, one schema check, larger batches and a single
+ * flush at the end of the build.  Forks send their batches over a Unix domain socket
+ * (AGGREGATOR_SOCKET, see {@link ForkClientSink}); each batch is acknowledged once it has been
+ * handed to the collector's own queue and spool.
+ *
+ * <p>Started by the first fork that finds nobody listening (or by the build, through
+ * {@link #main(String[])}), it exits once no fork has been connected for AGGREGATOR_IDLE_MS.</p>
+ */
+public final class ForkAggregator implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ForkAggregator.class);
+    // what batches of rows are made of; anything else is refused (also used to read spool files)
+    /* package */ static final ObjectInputFilter ROWS_ONLY = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;com.scibrazeau.dbunitreporter.*;java.lang.*;java.util.*;!*");
+    /* package */ static final int ACK = 1;
+
+    private final Path socket;
+    private final Consumer<Map<String, Object>> consumer;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final Object idleLock = new Object();
+    private ServerSocketChannel server;
+    private Thread acceptor;
+    private long lastActive;
+    private long rows;
+
+    /**
+     * @param consumer  receives every row sent by a fork.  May block to slow forks down.
+     */
+    /* package */ ForkAggregator(Path socket, Consumer<Map<String, Object>> consumer) {
+        this.socket = socket;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Listens on the socket, replacing a file left behind by a collector that died.
+     */
+    public void start() throws IOException {
+        if (socket.getParent() != null) {
+            Files.createDirectories(socket.getParent());
+        }
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        lastActive = System.currentTimeMillis();
+        acceptor = new Thread(this::accept, "forkAggregator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("Collecting test results of forks on {}", socket);
+    }
+
+    private void accept() {
+        while (server.isOpen()) {
+            try {
+                var channel = server.accept();
+                connections.add(channel);
+                connectionCount.incrementAndGet();
+                var reader = new Thread(() -> read(channel), "forkAggregator-" + connectionCount.get());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Could not accept connection on {}", socket, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void read(SocketChannel channel) {
+        try (channel;
+             var out = Channels.newOutputStream(channel);
+             var in = new ObjectInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            in.setObjectInputFilter(ROWS_ONLY);
+            while (true) {
+                var batch = (List<Map<String, Object>>) in.readObject();
+                batch.forEach(consumer);
+                synchronized (idleLock) {
+                    rows += batch.size();
+                }
+                out.write(ACK);
+            }
+        } catch (EOFException | ClosedChannelException e) {
+            // the fork is done
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            LOGGER.warn("Lost connection to a fork; its unacknowledged results will be recovered from its spool", e);
+        } finally {
+            connections.remove(channel);
+            synchronized (idleLock) {
+                lastActive = System.currentTimeMillis();
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until no fork has been connected for the given time.
+     */
+    public void awaitIdle(long idleMillis) throws InterruptedException {
+        synchronized (idleLock) {
+            while (true) {
+                long wait = lastActive + idleMillis - System.currentTimeMillis();
+                if (connections.isEmpty() && wait <= 0) {
+                    return;
+                }
+                idleLock.wait(connections.isEmpty() ? wait : idleMillis);
+            }
+        }
+    }
+
+    /**
+     * @return the number of rows received so far.
+     */
+    public long getRows() {
+        synchronized (idleLock) {
+            return rows;
+        }
+    }
+
+    /**
+     * Stops listening.  Forks still connected are disconnected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (server == null) {
+            return;
+        }
+        server.close();
+        for (var channel : connections) {
+            channel.close();
+        }
+        Files.deleteIfExists(socket);
+    }
+
+    /**
+     * Runs a collector on the given socket (or AGGREGATOR_SOCKET), sending everything it receives
+     * to the configured SINK, until forks stop connecting.
+     */
+    public static void main(String[] args) throws Throwable {
+        var socket = Path.of(args.length > 0 ? args[0] : getPropValue("AGGREGATOR_SOCKET"));
+        var reporter = new BQTestInterceptor(false, true);
+        reporter.lazyLoad();
+        var aggregator = new ForkAggregator(socket, reporter::enqueue);
+        try {
+            aggregator.start();
+            aggregator.awaitIdle(Long.parseLong(getPropValue("AGGREGATOR_IDLE_MS", "10000")));
+        } finally {
+            aggregator.close();
+            LOGGER.info("Collected {} test results from forks", aggregator.getRows());
+            reporter.close();
+        }
+    }
+}
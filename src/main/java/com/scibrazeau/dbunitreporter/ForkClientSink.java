@@ -0,0 +1,147 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Schema;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Sends the batches of a test JVM to the {@link ForkAggregator} of the build, instead of to
+ * BigQuery (AGGREGATOR_SOCKET).  When nobody listens on the socket, the first fork to get there
+ * starts the collector in a JVM of its own (AGGREGATOR_SPAWN=true), with the same class path,
+ * environment and configuration system properties.  The properties are passed as environment
+ * variables rather than on the command line, where anybody could read credentials with ps.
+ */
+/* package */ class ForkClientSink implements ResultSink {
+    private static final Logger LOGGER = LogManager.getLogger(ForkClientSink.class);
+    private static final long START_TIMEOUT_MS = Long.parseLong(getPropValue("AGGREGATOR_START_MS", "30000"));
+
+    private final Path socket;
+    private final boolean spawn;
+    private SocketChannel channel;
+    private ObjectOutputStream out;
+    private InputStream in;
+
+    /* package */ ForkClientSink(Path socket, boolean spawn) {
+        this.socket = socket;
+        this.spawn = spawn;
+    }
+
+    @Override
+    public String getName() {
+        return "aggregator";
+    }
+
+    /**
+     * Connects to the collector, starting it if needed.  The table is left to the collector.
+     */
+    @Override
+    public void open(String dbName, String tableName, Schema schema) throws IOException, InterruptedException {
+        var connected = tryConnect();
+        if (connected == null && spawn) {
+            connected = spawnAndConnect();
+        }
+        if (connected == null) {
+            throw new IOException("No test result collector is listening on " + socket);
+        }
+        this.channel = connected;
+        this.out = new ObjectOutputStream(new BufferedOutputStream(Channels.newOutputStream(connected)));
+        this.out.flush();
+        this.in = Channels.newInputStream(connected);
+    }
+
+    private SocketChannel tryConnect() {
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private SocketChannel spawnAndConnect() throws IOException, InterruptedException {
+        if (socket.getParent() != null) {
+            Files.createDirectories(socket.getParent());
+        }
+        // forks starting together wait for the one starting the collector
+        try (var lockChannel = FileChannel.open(Path.of(socket + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             var ignored = lockChannel.lock()) {
+            var connected = tryConnect();
+            if (connected != null) {
+                return connected;
+            }
+            var log = new File(socket + ".log");
+            LOGGER.info("Starting test result collector on {} (log in {})", socket, log);
+            newCollectorProcess(socket)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                    .start();
+            long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+            while (System.currentTimeMillis() < deadline) {
+                connected = tryConnect();
+                if (connected != null) {
+                    return connected;
+                }
+                Thread.sleep(50);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Configuration system properties become environment variables of the same name, which
+     * {@link ReporterConfig} looks up in the same order relative to the inherited ones.
+     */
+    /* package */ static ProcessBuilder newCollectorProcess(Path socket) {
+        var process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                ForkAggregator.class.getName(),
+                socket.toString()
+        );
+        process.environment().putAll(ReporterConfig.getSystemProperties());
+        return process;
+    }
+
+    /**
+     * Returns once the collector has queued (and spooled) the batch.
+     */
+    @Override
+    public synchronized void write(List<Map<String, Object>> batch) throws IOException {
+        var rows = new ArrayList<Map<String, Object>>(batch.size());
+        for (var row : batch) {
+            rows.add(row instanceof Serializable ? row : new HashMap<>(row));
+        }
+        out.writeObject(rows);
+        // the rows aren't sent again, so don't keep references to them
+        out.reset();
+        out.flush();
+        if (in.read() != ForkAggregator.ACK) {
+            throw new EOFException("The test result collector on " + socket + " went away");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
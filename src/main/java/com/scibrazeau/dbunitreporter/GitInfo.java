@@ -0,0 +1,110 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the current branch and commit straight from the .git directory, rather than launching
+ * git processes.  Handles worktrees / submodules (where .git is a file), detached heads and
+ * packed refs.
+ */
+/* package */ final class GitInfo {
+    private static final String REF_PREFIX = "ref: ";
+    private static final String HEADS_PREFIX = "refs/heads/";
+
+    private final String branchName;
+    private final String sha;
+
+    private GitInfo(String branchName, String sha) {
+        this.branchName = branchName;
+        this.sha = sha;
+    }
+
+    /**
+     * @return the git information for the repository containing dir, or an empty GitInfo
+     *         when there is none.
+     */
+    /* package */ static GitInfo read(File dir) {
+        try {
+            var gitDir = findGitDir(dir.getAbsoluteFile());
+            if (gitDir == null) {
+                return new GitInfo(null, null);
+            }
+            var head = readFirstLine(new File(gitDir, "HEAD"));
+            if (head == null || !head.startsWith(REF_PREFIX)) {
+                // detached head
+                return new GitInfo("HEAD", head);
+            }
+            var ref = head.substring(REF_PREFIX.length()).trim();
+            var branch = ref.startsWith(HEADS_PREFIX) ? ref.substring(HEADS_PREFIX.length()) : ref;
+            return new GitInfo(branch, resolveRef(gitDir, ref));
+        } catch (IOException e) {
+            return new GitInfo(null, null);
+        }
+    }
+
+    private static File findGitDir(File dir) throws IOException {
+        for (var current = dir; current != null; current = current.getParentFile()) {
+            var git = new File(current, ".git");
+            if (git.isDirectory()) {
+                return git;
+            }
+            if (git.isFile()) {
+                // worktree or submodule: "gitdir: <path>"
+                var gitDir = StringUtils.removeStart(readFirstLine(git), "gitdir:").trim();
+                var resolved = new File(gitDir);
+                return resolved.isAbsolute() ? resolved : new File(current, gitDir);
+            }
+        }
+        return null;
+    }
+
+    private static String resolveRef(File gitDir, String ref) throws IOException {
+        // refs are shared by all worktrees, and live in the "common" dir
+        var commonDir = gitDir;
+        var commonDirFile = new File(gitDir, "commondir");
+        if (commonDirFile.isFile()) {
+            var path = readFirstLine(commonDirFile);
+            commonDir = new File(path).isAbsolute() ? new File(path) : new File(gitDir, path);
+        }
+        for (var base : new File[]{gitDir, commonDir}) {
+            var looseRef = new File(base, ref);
+            if (looseRef.isFile()) {
+                return readFirstLine(looseRef);
+            }
+        }
+        var packedRefs = new File(commonDir, "packed-refs");
+        if (packedRefs.isFile()) {
+            for (String line : Files.readAllLines(packedRefs.toPath(), StandardCharsets.UTF_8)) {
+                if (line.endsWith(" " + ref) && !line.startsWith("#")) {
+                    return line.substring(0, line.indexOf(' '));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        try (var lines = Files.lines(file.toPath(), StandardCharsets.UTF_8)) {
+            return lines.findFirst().map(String::trim).orElse(null);
+        }
+    }
+
+    /**
+     * @return the branch name, as given by git rev-parse --abbrev-ref HEAD.
+     */
+    public String getBranchName() {
+        return branchName;
+    }
+
+    /**
+     * @return the abbreviated commit, as given by git rev-parse --short HEAD.
+     */
+    public String getShortSha() {
+        return sha == null ? null : StringUtils.left(sha, 7);
+    }
+}
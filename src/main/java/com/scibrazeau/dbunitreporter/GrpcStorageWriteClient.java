@@ -0,0 +1,76 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.auth.Credentials;
+import com.google.cloud.bigquery.storage.v1.*;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link StorageWriteClient} backed by the real BigQueryWriteClient.
+ */
+/* package */ class GrpcStorageWriteClient implements StorageWriteClient {
+    private final BigQueryWriteClient client;
+    private final Map<String, StreamWriter> writers = new ConcurrentHashMap<>();
+
+    /* package */ GrpcStorageWriteClient(Credentials credentials) throws IOException {
+        this.client = BigQueryWriteClient.create(
+                BigQueryWriteSettings.newBuilder()
+                        .setCredentialsProvider(FixedCredentialsProvider.create(credentials))
+                        .build()
+        );
+    }
+
+    @Override
+    public String createPendingStream(String table) {
+        var stream = WriteStream.newBuilder().setType(WriteStream.Type.PENDING).build();
+        return client.createWriteStream(table, stream).getName();
+    }
+
+    @Override
+    public void append(String stream, ProtoSchema schema, ProtoRows rows, long offset) throws Exception {
+        var writer = writers.computeIfAbsent(stream, s -> {
+            try {
+                return StreamWriter.newBuilder(s, client).setWriterSchema(schema).build();
+            } catch (IOException e) {
+                return ExceptionUtils.rethrow(e);
+            }
+        });
+        writer.append(rows, offset).get();
+    }
+
+    @Override
+    public long finalizeStream(String stream) {
+        var writer = writers.remove(stream);
+        if (writer != null) {
+            writer.close();
+        }
+        return client.finalizeWriteStream(stream).getRowCount();
+    }
+
+    @Override
+    public void commit(String table, List<String> streams) {
+        var response = client.batchCommitWriteStreams(
+                BatchCommitWriteStreamsRequest.newBuilder()
+                        .setParent(table)
+                        .addAllWriteStreams(streams)
+                        .build()
+        );
+        if (!response.hasCommitTime()) {
+            throw new IllegalStateException("Failed to commit test results: " +
+                    StreamEx.of(response.getStreamErrorsList()).map(StorageError::getErrorMessage).joining("; "));
+        }
+    }
+
+    @Override
+    public void close() {
+        writers.values().forEach(StreamWriter::close);
+        writers.clear();
+        client.close();
+    }
+}
@@ -0,0 +1,15 @@
+package com.scibrazeau.dbunitreporter;
+
+/**
+ * How {@link HistoryOrderer} orders tests (HISTORY_ORDER).
+ */
+public enum HistoryOrderPolicy {
+    /**
+     * The tests that took the longest in past runs first, so parallel runs are packed better.
+     */
+    LONGEST_FIRST,
+    /**
+     * The tests that failed most recently first (then the longest), for faster feedback.
+     */
+    RECENTLY_FAILED_FIRST
+}
@@ -0,0 +1,69 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.ClassDescriptor;
+import org.junit.jupiter.api.ClassOrderer;
+import org.junit.jupiter.api.ClassOrdererContext;
+import org.junit.jupiter.api.MethodDescriptor;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.MethodOrdererContext;
+
+import java.lang.reflect.Method;
+import java.util.Comparator;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Orders test classes and methods using what previous runs recorded (see {@link TestHistory}),
+ * according to HISTORY_ORDER (a {@link HistoryOrderPolicy}, LONGEST_FIRST by default).  Tests
+ * without history go first, since nothing says they are quick.  Enable it with
+ * <pre>
+ * junit.jupiter.testclass.order.default=com.scibrazeau.dbunitreporter.HistoryOrderer
+ * junit.jupiter.testmethod.order.default=com.scibrazeau.dbunitreporter.HistoryOrderer
+ * </pre>
+ */
+public class HistoryOrderer implements ClassOrderer, MethodOrderer {
+    private final TestHistory history;
+    private final HistoryOrderPolicy policy;
+
+    public HistoryOrderer() {
+        this(TestHistory.get(), HistoryOrderPolicy.valueOf(getPropValue("HISTORY_ORDER", "LONGEST_FIRST").toUpperCase()));
+    }
+
+    /* package */ HistoryOrderer(TestHistory history, HistoryOrderPolicy policy) {
+        this.history = history;
+        this.policy = policy;
+    }
+
+    @Override
+    public void orderClasses(ClassOrdererContext context) {
+        if (!history.isEmpty()) {
+            context.getClassDescriptors().sort(Comparator.comparing(ClassDescriptor::getTestClass, classComparator()));
+        }
+    }
+
+    @Override
+    public void orderMethods(MethodOrdererContext context) {
+        if (!history.isEmpty()) {
+            context.getMethodDescriptors().sort(Comparator.comparing(MethodDescriptor::getMethod, methodComparator()));
+        }
+    }
+
+    /* package */ Comparator<Class<?>> classComparator() {
+        return Comparator.<Class<?>, TestStats>comparing(history::getClassStats, statsComparator())
+                .thenComparing(Class::getName);
+    }
+
+    /* package */ Comparator<Method> methodComparator() {
+        return Comparator.<Method, TestStats>comparing(m -> history.getMethodStats(m.getDeclaringClass(), m.getName()), statsComparator())
+                .thenComparing(Method::getName)
+                .thenComparing(Method::toGenericString);
+    }
+
+    private Comparator<TestStats> statsComparator() {
+        var longestFirst = Comparator.comparingLong(TestStats::getMedianDuration).reversed();
+        var order = policy == HistoryOrderPolicy.RECENTLY_FAILED_FIRST ?
+                Comparator.comparingLong(TestStats::getLastFailure).reversed().thenComparing(longestFirst) :
+                longestFirst;
+        return Comparator.nullsFirst(order);
+    }
+}
@@ -0,0 +1,229 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Writes results to any database with a JDBC driver (SINK=jdbc), e.g. Postgres, ClickHouse,
+ * H2 or SQLite.  The database is given by JDBC_URL (plus JDBC_USER / JDBC_PASSWORD); DB_NAME is
+ * not used.  Rows are inserted with batched, multi-row INSERT ... VALUES statements of
+ * JDBC_ROWS_PER_STATEMENT rows each.  The driver must be on the test classpath.
+ */
+public class JdbcResultSink implements ResultSink {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int rowsPerStatement;
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private final List<Connection> connections = Collections.synchronizedList(new ArrayList<>());
+    private String tableName;
+    private List<Field> columns;
+
+    public JdbcResultSink() {
+        this(
+                getPropValue("JDBC_URL"),
+                getPropValue("JDBC_USER"),
+                getPropValue("JDBC_PASSWORD"),
+                Integer.parseInt(getPropValue("JDBC_ROWS_PER_STATEMENT", "50"))
+        );
+    }
+
+    /* package */ JdbcResultSink(String url, String user, String password, int rowsPerStatement) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    @Override
+    public String getName() {
+        return "jdbc";
+    }
+
+    @Override
+    public void open(String dbName, String tableName, Schema schema) throws SQLException {
+        if (StringUtils.isEmpty(url)) {
+            throw new IllegalStateException("JDBC_URL must be set when SINK=jdbc");
+        }
+        this.tableName = tableName;
+        // columns with a default are filled in by the database
+        this.columns = StreamEx.of(schema.getFields())
+                .filter(f -> StringUtils.isEmpty(f.getDefaultValueExpression()))
+                .toList();
+        var connection = connect();
+        new JdbcSchemaUpdates(connection, tableName, getPropValue("JDBC_TABLE_OPTIONS")).synchSchema(schema);
+        connection.setAutoCommit(false);
+        idle.add(connection);
+    }
+
+    private Connection connect() throws SQLException {
+        var connection = DriverManager.getConnection(url, user, password);
+        connections.add(connection);
+        return connection;
+    }
+
+    private String insertSql(int rows) {
+        var names = StreamEx.of(columns).map(Field::getName).joining(", ");
+        var values = "(" + StreamEx.constant("?", columns.size()).joining(", ") + ")";
+        return "INSERT INTO " + tableName + " (" + names + ") VALUES " + StreamEx.constant(values, rows).joining(", ");
+    }
+
+    @Override
+    public void write(List<Map<String, Object>> batch) throws SQLException {
+        var connection = idle.poll();
+        if (connection == null) {
+            connection = connect();
+            connection.setAutoCommit(false);
+        }
+        try {
+            insert(connection, batch);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            discard(connection, e);
+            throw e;
+        }
+        idle.add(connection);
+    }
+
+    /**
+     * A connection that failed a write may be broken, or still in the middle of a transaction,
+     * so it isn't given to another batch.
+     */
+    private void discard(Connection connection, Exception cause) {
+        connections.remove(connection);
+        try (connection) {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void insert(Connection connection, List<Map<String, Object>> batch) throws SQLException {
+        int fullStatements = batch.size() / rowsPerStatement;
+        if (fullStatements > 0) {
+            try (var statement = connection.prepareStatement(insertSql(rowsPerStatement))) {
+                for (int i = 0; i < fullStatements; i++) {
+                    bind(statement, batch.subList(i * rowsPerStatement, (i + 1) * rowsPerStatement));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        var remainder = batch.subList(fullStatements * rowsPerStatement, batch.size());
+        if (!remainder.isEmpty()) {
+            try (var statement = connection.prepareStatement(insertSql(remainder.size()))) {
+                bind(statement, remainder);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private void bind(PreparedStatement statement, List<Map<String, Object>> rows) throws SQLException {
+        int index = 1;
+        for (var row : rows) {
+            for (Field column : columns) {
+                bindValue(statement, index++, column, row.get(column.getName()));
+            }
+        }
+    }
+
+    private static void bindValue(PreparedStatement statement, int index, Field column, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, toJdbcType(column));
+        } else if (column.getMode() == Field.Mode.REPEATED) {
+            var values = value instanceof Collection ? ((Collection<?>) value).toArray() : (Object[]) value;
+            statement.setString(index, StreamEx.of(values).joining(","));
+        } else {
+            switch (column.getType().getStandardType()) {
+                case INT64:
+                    statement.setLong(index, ((Number) value).longValue());
+                    break;
+                case FLOAT64:
+                    statement.setDouble(index, ((Number) value).doubleValue());
+                    break;
+                case BOOL:
+                    statement.setBoolean(index, (Boolean) value);
+                    break;
+                case DATETIME:
+                    statement.setTimestamp(index, Timestamp.valueOf(LocalDateTime.parse(value.toString())));
+                    break;
+                default:
+                    statement.setString(index, value.toString());
+            }
+        }
+    }
+
+    private static int toJdbcType(Field column) {
+        if (column.getMode() == Field.Mode.REPEATED) {
+            return Types.VARCHAR;
+        }
+        switch (column.getType().getStandardType()) {
+            case INT64:
+                return Types.BIGINT;
+            case FLOAT64:
+                return Types.DOUBLE;
+            case BOOL:
+                return Types.BOOLEAN;
+            case DATETIME:
+                return Types.TIMESTAMP;
+            default:
+                return Types.VARCHAR;
+        }
+    }
+
+    /**
+     * Databases don't agree on how to compute a median, so this uses the average duration.
+     */
+    @Override
+    public List<TestStats> readHistory(String dbName, String tableName, String moduleName, int days) throws SQLException {
+        if (StringUtils.isEmpty(url)) {
+            return List.of();
+        }
+        var sql = "SELECT package_name, class_name, method_name, COUNT(*) AS runs, " +
+                "SUM(CASE WHEN success THEN 0 ELSE 1 END) AS failures, " +
+                "AVG(duration) AS median_duration, " +
+                "MAX(CASE WHEN success THEN NULL ELSE end_time END) AS last_failure " +
+                "FROM " + tableName + " WHERE module_name = ? AND start_time >= ? AND " + NodeType.TESTS_ONLY_SQL + " " +
+                "GROUP BY package_name, class_name, method_name";
+        try (var connection = DriverManager.getConnection(url, user, password);
+             var statement = connection.prepareStatement(sql)) {
+            statement.setString(1, moduleName);
+            statement.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now(ZoneOffset.UTC).minusDays(days)));
+            var stats = new ArrayList<TestStats>();
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    var lastFailure = resultSet.getTimestamp("last_failure");
+                    stats.add(new TestStats(
+                            resultSet.getString("package_name"),
+                            resultSet.getString("class_name"),
+                            resultSet.getString("method_name"),
+                            resultSet.getLong("runs"),
+                            resultSet.getLong("failures"),
+                            Math.round(resultSet.getDouble("median_duration")),
+                            lastFailure == null ? -1 : lastFailure.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli()
+                    ));
+                }
+            }
+            return stats;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        idle.clear();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The JDBC counterpart of {@link SchemaUpdates}: creates the result table, or adds the columns
+ * an existing one is missing.  Column types are mapped to their closest ANSI SQL equivalent.
+ */
+public class JdbcSchemaUpdates {
+    private static final Map<String, String> DEFAULT_EXPRESSIONS = Map.of(
+            "SESSION_USER()", "CURRENT_USER"
+    );
+
+    private final Connection connection;
+    private final String tableName;
+    private final String tableOptions;
+
+    /**
+     * @param tableOptions appended to the CREATE TABLE statement (e.g. ClickHouse's ENGINE clause).
+     */
+    /* package */ JdbcSchemaUpdates(Connection connection, String tableName, String tableOptions) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.tableOptions = tableOptions;
+    }
+
+    /* package */ static String toSqlType(Field field) {
+        if (field.getMode() == Field.Mode.REPEATED) {
+            // stored as a comma separated list
+            return "VARCHAR";
+        }
+        switch (field.getType().getStandardType()) {
+            case INT64:
+                return "BIGINT";
+            case FLOAT64:
+                return "DOUBLE PRECISION";
+            case BOOL:
+                return "BOOLEAN";
+            case DATETIME:
+                return "TIMESTAMP";
+            default:
+                return "VARCHAR";
+        }
+    }
+
+    private static String toColumnDefinition(Field field) {
+        var definition = field.getName() + " " + toSqlType(field);
+        var defaultValue = DEFAULT_EXPRESSIONS.get(StringUtils.defaultString(field.getDefaultValueExpression()));
+        if (!StringUtils.isEmpty(defaultValue)) {
+            definition += " DEFAULT " + defaultValue;
+        }
+        return definition;
+    }
+
+    /**
+     * @return the (lower case) names of the table's columns, or null if the table doesn't exist.
+     */
+    private Set<String> getExistingColumns() {
+        try (var statement = connection.createStatement();
+             var rs = statement.executeQuery("SELECT * FROM " + tableName + " WHERE 1 = 0")) {
+            var metaData = rs.getMetaData();
+            var columns = new HashSet<String>();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                columns.add(metaData.getColumnName(i).toLowerCase());
+            }
+            return columns;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    public void synchSchema(Schema officialSchema) throws SQLException {
+        var existingColumns = getExistingColumns();
+        var statements = new ArrayList<String>();
+        if (existingColumns == null) {
+            var columns = new ArrayList<String>();
+            officialSchema.getFields().forEach(f -> columns.add(toColumnDefinition(f)));
+            statements.add(String.format("CREATE TABLE %s (%s) %s",
+                    tableName,
+                    String.join(", ", columns),
+                    StringUtils.defaultString(tableOptions)
+            ).trim());
+        } else {
+            for (Field officialField : officialSchema.getFields()) {
+                if (!existingColumns.contains(officialField.getName().toLowerCase())) {
+                    statements.add(String.format("ALTER TABLE %s ADD COLUMN %s", tableName, toColumnDefinition(officialField)));
+                }
+            }
+        }
+        try (var statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
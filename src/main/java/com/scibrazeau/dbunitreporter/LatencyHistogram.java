@@ -0,0 +1,84 @@
+package com.scibrazeau.dbunitreporter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values, with HDR histogram style buckets: values below
+ * 64 are counted exactly, and above that each power of two is split into 32 linear sub-buckets,
+ * so recorded values keep about 3% precision.  Recording is lock free and allocation free.
+ */
+/* package */ class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // enough for about 2 years of milliseconds; bigger values end up in the last bucket
+    private static final int MAX_VALUE_BITS = 36;
+    private static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(Math.min(BUCKETS - 1, indexOf(value)));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /* package */ static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKETS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the largest value that would be counted in the given bucket.
+     */
+    /* package */ static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long mantissa = index - ((long) shift * SUB_BUCKETS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile    between 0 and 100.
+     * @return a value that at least the given percentage of recorded values are less than or
+     *         equal to (within the histogram's precision), or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long recorded = getCount();
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
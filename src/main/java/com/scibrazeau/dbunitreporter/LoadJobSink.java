@@ -0,0 +1,186 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.*;
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Appends results to gzip compressed, newline delimited JSON files (SINK=loadJob), and ingests
+ * them all at once when the run is closed: with a single BigQuery load job per file, or, when
+ * LOAD_DIR is set, by moving the files into that directory for some other process to pick up.
+ * Much cheaper than streaming for very large runs, at the cost of results only showing up at
+ * the end.  A file that can't be ingested is deleted: its rows are sent again by the next run
+ * if spooling is enabled.
+ */
+public class LoadJobSink extends BigQueryResultSink {
+    private static final Logger LOGGER = LogManager.getLogger(LoadJobSink.class);
+    private static final Pattern PART_FILE = Pattern.compile("testresults-(\\d+)-.*\\.json\\.gz\\.part");
+
+    private final String loadDir;
+    private final long maxRowsPerFile;
+    // the row_id of the rows in each file
+    private final Map<NdjsonWriter, List<String>> completed = new LinkedHashMap<>();
+    private File stagingDir;
+    private List<Field> fields;
+    private NdjsonWriter current;
+    private List<String> currentRowIds = new ArrayList<>();
+    private Consumer<Collection<String>> commitListener = rowIds -> { };
+
+    public LoadJobSink() {
+        this(getPropValue("LOAD_DIR"), Long.parseLong(getPropValue("LOAD_FILE_MAX_ROWS", "1000000")));
+    }
+
+    /* package */ LoadJobSink(String loadDir, long maxRowsPerFile) {
+        this.loadDir = loadDir;
+        this.maxRowsPerFile = maxRowsPerFile;
+    }
+
+    @Override
+    public String getName() {
+        return "loadJob";
+    }
+
+    @Override
+    public void open(String dbName, String tableName, Schema schema) throws IOException, InterruptedException {
+        if (StringUtils.isEmpty(loadDir)) {
+            super.open(dbName, tableName, schema);
+            stagingDir = new File(System.getProperty("java.io.tmpdir"));
+            deleteAbandonedFiles();
+        } else {
+            stagingDir = new File(loadDir);
+            Files.createDirectories(stagingDir.toPath());
+        }
+        // columns with a default value are filled in by the load job
+        fields = StreamEx.of(schema.getFields())
+                .filter(f -> StringUtils.isEmpty(f.getDefaultValueExpression()))
+                .toList();
+    }
+
+    /**
+     * Files being written by JVMs that were killed before they could load them.  Their rows
+     * are recovered from the spool, if enabled.  Not done for LOAD_DIR, that may be shared by
+     * several hosts.
+     */
+    private void deleteAbandonedFiles() {
+        var files = stagingDir.listFiles((dir, name) -> {
+            var matcher = PART_FILE.matcher(name);
+            return matcher.matches() && ProcessHandle.of(Long.parseLong(matcher.group(1))).isEmpty();
+        });
+        if (files == null) {
+            return;
+        }
+        for (var file : files) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete {}", file, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void write(List<Map<String, Object>> batch) throws IOException {
+        for (var row : batch) {
+            if (current == null) {
+                var name = "testresults-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID() + ".json.gz.part";
+                current = new NdjsonWriter(new File(stagingDir, name), fields);
+            }
+            current.write(row);
+            currentRowIds.add((String) row.get("row_id"));
+            if (current.getRows() >= maxRowsPerFile) {
+                complete();
+            }
+        }
+    }
+
+    private void complete() throws IOException {
+        current.close();
+        completed.put(current, currentRowIds);
+        current = null;
+        currentRowIds = new ArrayList<>();
+    }
+
+    @Override
+    public boolean commitsOnClose() {
+        return true;
+    }
+
+    @Override
+    public void setCommitListener(Consumer<Collection<String>> listener) {
+        this.commitListener = listener;
+    }
+
+    @Override
+    public synchronized void close() throws IOException, InterruptedException {
+        if (current != null) {
+            complete();
+        }
+        IOException failure = null;
+        for (var entry : completed.entrySet()) {
+            var file = entry.getKey();
+            try {
+                ingest(file);
+                // right away, so a run killed while loading the next files doesn't send these again
+                commitListener.accept(entry.getValue());
+            } catch (IOException | BigQueryException e) {
+                // keep going: every file is independent
+                LOGGER.warn("Could not ingest {} test results from {}. They will be sent by the next run, if spooling is enabled.", file.getRows(), file.getFile(), e);
+                try {
+                    Files.deleteIfExists(file.getFile().toPath());
+                } catch (IOException deleteFailure) {
+                    e.addSuppressed(deleteFailure);
+                }
+                if (failure == null) {
+                    failure = new IOException("Failed to ingest some test result files");
+                }
+                failure.addSuppressed(e);
+            }
+        }
+        completed.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /* package */ void ingest(NdjsonWriter file) throws IOException, InterruptedException {
+        if (StringUtils.isEmpty(loadDir)) {
+            load(file);
+        } else {
+            var part = file.getFile().toPath();
+            var target = part.resolveSibling(StringUtils.removeEnd(part.getFileName().toString(), ".part"));
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Wrote {} test results to {}", file.getRows(), target);
+        }
+    }
+
+    private void load(NdjsonWriter file) throws IOException, InterruptedException {
+        var configuration = WriteChannelConfiguration.newBuilder(getTableId())
+                .setFormatOptions(FormatOptions.json())
+                .setWriteDisposition(JobInfo.WriteDisposition.WRITE_APPEND)
+                .build();
+        var channel = getBigQuery().writer(configuration);
+        try (var out = Channels.newOutputStream(channel)) {
+            Files.copy(file.getFile().toPath(), out);
+        }
+        var job = channel.getJob().waitFor();
+        if (job == null || job.getStatus().getError() != null) {
+            throw new IOException("Failed to load test results from " + file.getFile() + ": " +
+                    (job == null ? "job no longer exists" : job.getStatus().getError().getMessage()));
+        }
+        LOGGER.info("Loaded {} test results into {} from {}", file.getRows(), getTableId().getTable(), file.getFile());
+        Files.delete(file.getFile().toPath());
+    }
+}
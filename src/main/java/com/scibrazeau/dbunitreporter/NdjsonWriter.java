@@ -0,0 +1,121 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams rows to a gzip compressed, newline delimited JSON file, the way a BigQuery load job
+ * expects them.  Values are written directly to the output, without building a JSON tree.
+ */
+/* package */ class NdjsonWriter implements Closeable {
+    private final File file;
+    private final List<Field> fields;
+    private final Writer out;
+    private long rows;
+
+    /* package */ NdjsonWriter(File file, List<Field> fields) throws IOException {
+        this.file = file;
+        this.fields = fields;
+        this.out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), 64 * 1024), StandardCharsets.UTF_8));
+    }
+
+    public void write(Map<String, Object> row) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Field field : fields) {
+            var value = row.get(field.getName());
+            if (value == null) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(out, field.getName());
+            out.write(':');
+            if (field.getMode() == Field.Mode.REPEATED) {
+                var values = value instanceof Collection ? ((Collection<?>) value).toArray() : (Object[]) value;
+                out.write('[');
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeValue(field.getType().getStandardType(), values[i]);
+                }
+                out.write(']');
+            } else {
+                writeValue(field.getType().getStandardType(), value);
+            }
+        }
+        out.write("}\n");
+        rows++;
+    }
+
+    private void writeValue(StandardSQLTypeName type, Object value) throws IOException {
+        switch (type) {
+            case INT64:
+            case FLOAT64:
+            case BOOL:
+                out.write(value.toString());
+                break;
+            default:
+                writeString(out, value.toString());
+        }
+    }
+
+    /**
+     * Writes s as a quoted and escaped JSON string.
+     */
+    /* package */ static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.write(s, start, i - start);
+                start = i + 1;
+                switch (c) {
+                    case '"':
+                        out.write("\\\"");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    default:
+                        out.write(String.format("\\u%04x", (int) c));
+                }
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,35 @@
+package com.scibrazeau.dbunitreporter;
+
+/**
+ * What a row of the timing tree (node_type) stands for.  Rows point to the node they belong to
+ * with parent_id, so the time of fixtures can be attributed to the tests they serve.
+ */
+/* package */ enum NodeType {
+    /**
+     * An engine, class, nested class or test template: everything below it, plus its own setup
+     * and teardown.
+     */
+    CONTAINER,
+    /**
+     * A test method, template invocation or dynamic test.
+     */
+    TEST,
+    /**
+     * All invocations of a test template, rolled up ({@link RollupInvocations}).
+     */
+    TEMPLATE,
+    /**
+     * The test class constructor, and the lifecycle methods (TIMING_PHASES=true).
+     */
+    CONSTRUCTOR,
+    BEFORE_ALL,
+    BEFORE_EACH,
+    AFTER_EACH,
+    AFTER_ALL;
+
+    /**
+     * SQL condition keeping only the rows of tests (including rows written before node_type
+     * existed), so containers and lifecycle phases don't count as test runs.
+     */
+    /* package */ static final String TESTS_ONLY_SQL = "(node_type IS NULL OR node_type IN ('" + TEST + "', '" + TEMPLATE + "'))";
+}
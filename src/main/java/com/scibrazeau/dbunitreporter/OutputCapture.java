@@ -0,0 +1,114 @@
+package com.scibrazeau.dbunitreporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Captures System.out / System.err on a per-thread basis.  A single demultiplexing stream
+ * is installed once for the whole JVM (instead of swapping the global streams around each
+ * test), so tests running in parallel each only capture their own output.  Threads started by
+ * a test (executors, async code) inherit its capture, and stop writing to it once the test ends.
+ */
+/* package */ final class OutputCapture {
+    private static final InheritableThreadLocal<Capture> CURRENT = new InheritableThreadLocal<>();
+    private static boolean installed;
+
+    private OutputCapture() {
+    }
+
+    /**
+     * The buffer of one test, shared with the threads it starts.
+     */
+    /* package */ static final class Capture {
+        private final Capture previous;
+        private OutputStream buffer;
+
+        private Capture(Capture previous, OutputStream buffer) {
+            this.previous = previous;
+            this.buffer = buffer;
+        }
+
+        private synchronized void write(int b) throws IOException {
+            if (buffer != null) {
+                buffer.write(b);
+            }
+        }
+
+        private synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (buffer != null) {
+                buffer.write(b, off, len);
+            }
+        }
+
+        private synchronized void end() {
+            buffer = null;
+        }
+    }
+
+    /* package */ static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        System.setOut(new PrintStream(new DemuxOutputStream(System.out), true));
+        System.setErr(new PrintStream(new DemuxOutputStream(System.err), true));
+    }
+
+    /**
+     * Start capturing the current thread's output, and that of the threads it starts, into the
+     * given buffer.
+     * @return  the capture, to be handed back to {@link #end(Capture)}.
+     */
+    /* package */ static Capture begin(OutputStream buffer) {
+        var capture = new Capture(CURRENT.get(), buffer);
+        CURRENT.set(capture);
+        return capture;
+    }
+
+    /**
+     * Stops writing to the buffer of the capture, from any thread, and restores the capture
+     * that was in place before it.
+     */
+    /* package */ static void end(Capture capture) {
+        System.out.flush();
+        System.err.flush();
+        capture.end();
+        if (capture.previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(capture.previous);
+        }
+    }
+
+    private static class DemuxOutputStream extends OutputStream {
+        private final PrintStream original;
+
+        DemuxOutputStream(PrintStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            original.write(b);
+            var capture = CURRENT.get();
+            if (capture != null) {
+                capture.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            original.write(b, off, len);
+            var capture = CURRENT.get();
+            if (capture != null) {
+                capture.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() {
+            original.flush();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.scibrazeau.dbunitreporter;
+
+/**
+ * What to do when a test finishes and the insert queue is full (see QUEUE_OVERFLOW_POLICY).
+ */
+public enum OverflowPolicy {
+    /** Wait for the inserter to make room.  Nothing is lost, but tests are slowed down. */
+    BLOCK,
+    /** Discard the oldest queued row. */
+    DROP_OLDEST,
+    /** Discard a row of a successful test (the new one, or the oldest queued); failures are kept as long as possible. */
+    DROP_SUCCESS_FIRST,
+    /** Write the row to a temp file; it is inserted once the queue has been drained. */
+    SPILL
+}
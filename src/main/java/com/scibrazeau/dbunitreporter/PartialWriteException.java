@@ -0,0 +1,24 @@
+package com.scibrazeau.dbunitreporter;
+
+import java.util.Set;
+
+/**
+ * Thrown by {@link ResultSink#write(java.util.List)} when some rows of a batch could not be
+ * stored, even after retries.  The other rows of the batch were stored, or rejected for good
+ * (e.g. invalid values), and won't be sent again.
+ */
+public class PartialWriteException extends Exception {
+    private final Set<String> rowIds;
+
+    public PartialWriteException(String message, Set<String> rowIds) {
+        super(message);
+        this.rowIds = Set.copyOf(rowIds);
+    }
+
+    /**
+     * @return the row_id of every row that was not stored.
+     */
+    public Set<String> getRowIds() {
+        return rowIds;
+    }
+}
@@ -0,0 +1,54 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Looks up configuration values.  Each key is searched, in order, as a dbunitreporter_ prefixed
+ * system property, a dbunitreporter_ prefixed environment variable, a plain system property
+ * and a plain environment variable.
+ */
+public final class ReporterConfig {
+    private static final String PREFIX = "dbunitreporter_";
+    // keys are upper case (SINK, DB_NAME, ...), unlike the properties of the JVM itself
+    private static final Pattern KEY = Pattern.compile("[A-Z][A-Z0-9_]*");
+
+    private ReporterConfig() {
+    }
+
+    /**
+     * @return the name of the module being tested: the name of the working directory.
+     */
+    public static String getModuleName() {
+        return new File(".").getAbsoluteFile().getParentFile().getName();
+    }
+
+    public static String getPropValue(String env) {
+        return getPropValue(env, null);
+    }
+
+    public static String getPropValue(String env, String defaultValue) {
+        return StreamEx.of(
+                System.getProperty(PREFIX + env),
+                System.getenv(PREFIX + env),
+                System.getProperty(env),
+                System.getenv(env)
+        ).filter(StringUtils::isNotEmpty)
+         .findFirst()
+         .orElse(defaultValue);
+    }
+
+    /**
+     * @return the system properties that may hold configuration values, either prefixed or plain,
+     *         so they can be passed on to another JVM.
+     */
+    /* package */ static Map<String, String> getSystemProperties() {
+        return StreamEx.of(System.getProperties().stringPropertyNames())
+                .filter(name -> name.startsWith(PREFIX) || KEY.matcher(name).matches())
+                .toMap(System::getProperty);
+    }
+}
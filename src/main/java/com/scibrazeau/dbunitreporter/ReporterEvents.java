@@ -0,0 +1,76 @@
+package com.scibrazeau.dbunitreporter;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder events of the reporter, to correlate with the profile of a test suite.  They
+ * cost next to nothing unless a recording that enables them is running.
+ */
+/* package */ final class ReporterEvents {
+    private static final String CATEGORY = "db-unit-reporter";
+
+    private ReporterEvents() {
+    }
+
+    @Name("com.scibrazeau.dbunitreporter.Enqueue")
+    @Label("Result Enqueued")
+    @Description("A test result handed to the reporter; the duration is the time the test thread waited for room in the queue")
+    @Category(CATEGORY)
+    @Threshold("1 ms")
+    /* package */ static final class Enqueue extends Event {
+        @Label("Queue Depth")
+        int queueDepth;
+    }
+
+    @Name("com.scibrazeau.dbunitreporter.Batch")
+    @Label("Batch Written")
+    @Description("A batch of results written to the sink; the duration is the insert latency")
+    @Category(CATEGORY)
+    /* package */ static final class Batch extends Event {
+        @Label("Sink")
+        String sink;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.scibrazeau.dbunitreporter.Retry")
+    @Label("Insert Retry")
+    @Description("Rows of a batch that failed and are about to be sent again")
+    @Category(CATEGORY)
+    /* package */ static final class Retry extends Event {
+        @Label("Rows")
+        int rows;
+
+        @Label("Attempt")
+        int attempt;
+    }
+
+    @Name("com.scibrazeau.dbunitreporter.QueueStatistics")
+    @Label("Reporter Queue Statistics")
+    @Category(CATEGORY)
+    @Period("1 s")
+    /* package */ static final class QueueStatistics extends Event {
+        @Label("Queue Depth")
+        int queueDepth;
+
+        @Label("Rows Enqueued")
+        long rowsEnqueued;
+
+        @Label("Rows Sent")
+        long rowsSent;
+
+        @Label("Rows Dropped")
+        long rowsDropped;
+
+        @Label("Row Errors")
+        long rowErrors;
+    }
+}
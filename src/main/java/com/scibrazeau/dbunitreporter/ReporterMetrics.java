@@ -0,0 +1,204 @@
+package com.scibrazeau.dbunitreporter;
+
+import jdk.jfr.FlightRecorder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the reporter itself (queueing, batching, inserting), shared by the
+ * interceptor, the batching pipeline and the sinks.  Exposed as a JMX MBean, and periodically
+ * recorded as a {@link ReporterEvents.QueueStatistics} JFR event.
+ */
+/* package */ final class ReporterMetrics implements ReporterMetricsMBean {
+    private static final Logger LOGGER = LogManager.getLogger(ReporterMetrics.class);
+    private static final ReporterMetrics INSTANCE = new ReporterMetrics();
+
+    private final LongAdder rowsEnqueued = new LongAdder();
+    private final LongAdder enqueueWaitNanos = new LongAdder();
+    private final LongAccumulator enqueueWaitMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder batchesFailed = new LongAdder();
+    private final LongAdder rowsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LatencyHistogram insertLatencyMs = new LatencyHistogram();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rowErrors = new LongAdder();
+    private final Runnable queueStatistics = this::emitQueueStatistics;
+    private volatile RowQueue queue;
+    private ObjectName name;
+
+    private ReporterMetrics() {
+    }
+
+    /* package */ static ReporterMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts publishing the metrics of the given queue (and of whatever sends its rows).
+     */
+    /* package */ synchronized void register(RowQueue queue, String moduleName) {
+        this.queue = queue;
+        if (name != null) {
+            return;
+        }
+        try {
+            name = new ObjectName("com.scibrazeau.dbunitreporter:type=Reporter,module=" + ObjectName.quote(String.valueOf(moduleName)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(this, ReporterMetricsMBean.class), name);
+        } catch (JMException | SecurityException e) {
+            LOGGER.debug("Could not register the reporter MBean", e);
+            name = null;
+        }
+        FlightRecorder.addPeriodicEvent(ReporterEvents.QueueStatistics.class, queueStatistics);
+    }
+
+    /* package */ synchronized void unregister() {
+        FlightRecorder.removePeriodicEvent(queueStatistics);
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException | SecurityException e) {
+            LOGGER.debug("Could not unregister the reporter MBean", e);
+        }
+        name = null;
+    }
+
+    private void emitQueueStatistics() {
+        var event = new ReporterEvents.QueueStatistics();
+        event.queueDepth = getQueueDepth();
+        event.rowsEnqueued = getRowsEnqueued();
+        event.rowsSent = getRowsSent();
+        event.rowsDropped = getRowsDropped();
+        event.rowErrors = getRowErrors();
+        event.commit();
+    }
+
+    /* package */ void enqueued(long waitNanos) {
+        rowsEnqueued.increment();
+        enqueueWaitNanos.add(waitNanos);
+        enqueueWaitMaxNanos.accumulate(waitNanos);
+    }
+
+    /* package */ void batchSent(int rows, long bytes, long latencyNanos) {
+        batchesSent.increment();
+        rowsSent.add(rows);
+        bytesSent.add(bytes);
+        insertLatencyMs.record(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+    }
+
+    /* package */ void batchFailed(int rows) {
+        batchesFailed.increment();
+        rowErrors.add(rows);
+    }
+
+    /* package */ void retried(int rows) {
+        retries.add(rows);
+    }
+
+    /**
+     * @param rows  rows a sink accepted as part of a batch, but could not store.
+     */
+    /* package */ void rowErrors(int rows) {
+        rowErrors.add(rows);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        var current = queue;
+        return current == null ? 0 : current.size();
+    }
+
+    @Override
+    public long getRowsEnqueued() {
+        return rowsEnqueued.sum();
+    }
+
+    @Override
+    public long getEnqueueWaitTotalMs() {
+        return TimeUnit.NANOSECONDS.toMillis(enqueueWaitNanos.sum());
+    }
+
+    @Override
+    public long getEnqueueWaitMaxMs() {
+        return TimeUnit.NANOSECONDS.toMillis(enqueueWaitMaxNanos.get());
+    }
+
+    @Override
+    public long getRowsDropped() {
+        var current = queue;
+        return current == null ? 0 : current.getDropped();
+    }
+
+    @Override
+    public long getRowsSpilled() {
+        var current = queue;
+        return current == null ? 0 : current.getSpilled();
+    }
+
+    @Override
+    public long getBatchesSent() {
+        return batchesSent.sum();
+    }
+
+    @Override
+    public long getBatchesFailed() {
+        return batchesFailed.sum();
+    }
+
+    @Override
+    public long getRowsSent() {
+        return rowsSent.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public double getAverageBatchRows() {
+        long batches = getBatchesSent();
+        return batches == 0 ? 0 : (double) getRowsSent() / batches;
+    }
+
+    @Override
+    public double getAverageBatchBytes() {
+        long batches = getBatchesSent();
+        return batches == 0 ? 0 : (double) getBytesSent() / batches;
+    }
+
+    @Override
+    public long getInsertLatencyP50Ms() {
+        return insertLatencyMs.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getInsertLatencyP99Ms() {
+        return insertLatencyMs.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getInsertLatencyMaxMs() {
+        return insertLatencyMs.getMax();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getRowErrors() {
+        return rowErrors.sum();
+    }
+}
@@ -0,0 +1,41 @@
+package com.scibrazeau.dbunitreporter;
+
+/**
+ * What the reporter exposes over JMX, as com.scibrazeau.dbunitreporter:type=Reporter,module=...
+ * Times are in milliseconds, and counts are since the start of the run.
+ */
+public interface ReporterMetricsMBean {
+    int getQueueDepth();
+
+    long getRowsEnqueued();
+
+    long getEnqueueWaitTotalMs();
+
+    long getEnqueueWaitMaxMs();
+
+    long getRowsDropped();
+
+    long getRowsSpilled();
+
+    long getBatchesSent();
+
+    long getBatchesFailed();
+
+    long getRowsSent();
+
+    long getBytesSent();
+
+    double getAverageBatchRows();
+
+    double getAverageBatchBytes();
+
+    long getInsertLatencyP50Ms();
+
+    long getInsertLatencyP99Ms();
+
+    long getInsertLatencyMaxMs();
+
+    long getRetries();
+
+    long getRowErrors();
+}
@@ -0,0 +1,129 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Measures the CPU time and heap allocations of the thread running a test, and the garbage
+ * collections that happened meanwhile (PROFILE_RESOURCES=true).  CPU time and allocations are
+ * for the test thread only; garbage collections are JVM wide, so include the work of tests
+ * running in parallel.
+ */
+/* package */ final class ResourceProfiler {
+    private static final Logger LOGGER = LogManager.getLogger(ResourceProfiler.class);
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+    private static final boolean CPU_SUPPORTED = enableCpuTime();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = enableAllocations();
+
+    private ResourceProfiler() {
+    }
+
+    /**
+     * Resources used by a thread (CPU, allocations) and the JVM (garbage collections), either
+     * cumulative or between two snapshots.
+     */
+    /* package */ static final class Snapshot {
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcMillis;
+
+        private Snapshot(long cpuNanos, long allocatedBytes, long gcCount, long gcMillis) {
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * @return what was used between start and this snapshot, taken on the same thread.
+         */
+        public Snapshot since(Snapshot start) {
+            return new Snapshot(
+                    cpuNanos < 0 || start.cpuNanos < 0 ? -1 : cpuNanos - start.cpuNanos,
+                    allocatedBytes < 0 || start.allocatedBytes < 0 ? -1 : allocatedBytes - start.allocatedBytes,
+                    gcCount - start.gcCount,
+                    gcMillis - start.gcMillis
+            );
+        }
+
+        /**
+         * @return the CPU time, or -1 if it can't be measured.
+         */
+        public long getCpuTimeMs() {
+            return cpuNanos < 0 ? -1 : cpuNanos / 1_000_000;
+        }
+
+        /**
+         * @return the bytes allocated, or -1 if they can't be measured.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcTimeMs() {
+            return gcMillis;
+        }
+    }
+
+    private static boolean enableCpuTime() {
+        try {
+            if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            LOGGER.debug("Thread CPU time is not available", e);
+            return false;
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean enableAllocations() {
+        try {
+            if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                var threads = (com.sun.management.ThreadMXBean) THREADS;
+                if (threads.isThreadAllocatedMemorySupported()) {
+                    if (!threads.isThreadAllocatedMemoryEnabled()) {
+                        threads.setThreadAllocatedMemoryEnabled(true);
+                    }
+                    return threads;
+                }
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            LOGGER.debug("Thread allocated memory is not available", e);
+        }
+        return null;
+    }
+
+    /**
+     * @return what the current thread, and the JVM, have used so far.
+     */
+    /* package */ static Snapshot snapshot() {
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (var collector : COLLECTORS) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        return new Snapshot(
+                CPU_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : -1,
+                ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1,
+                gcCount,
+                gcMillis
+        );
+    }
+}
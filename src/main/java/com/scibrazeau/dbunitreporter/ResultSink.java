@@ -0,0 +1,83 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Schema;
+import one.util.streamex.StreamEx;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.Consumer;
+
+/**
+ * Where test results end up.  Implementations are discovered with {@link ServiceLoader} (list
+ * them in META-INF/services/com.scibrazeau.dbunitreporter.ResultSink) and selected with the SINK
+ * property.  Queueing and batching are handled by the reporter; a sink only receives batches,
+ * possibly from several threads at once.
+ */
+public interface ResultSink extends AutoCloseable {
+    /**
+     * @return the name used to select this sink with the SINK property.
+     */
+    String getName();
+
+    /**
+     * Creates the result table if it is missing, or adds any column it lacks.
+     * @param schema    the columns of a result row.  Sinks that don't support a column type
+     *                  should map it to the closest thing they have.
+     */
+    void open(String dbName, String tableName, Schema schema) throws Exception;
+
+    /**
+     * Stores a batch of rows, keyed by column name.  REPEATED columns are passed as arrays.
+     * @throws PartialWriteException    when only some rows of the batch could not be stored.
+     *                                  Any other exception means none of them were.
+     */
+    void write(List<Map<String, Object>> batch) throws Exception;
+
+    /**
+     * @return true if rows only become durable once {@link #close()} commits them (rather than
+     *         when {@link #write(List)} returns).  Such a sink reports the rows it commits to the
+     *         listener given to {@link #setCommitListener}.
+     */
+    default boolean commitsOnClose() {
+        return false;
+    }
+
+    /**
+     * For sinks that {@link #commitsOnClose()}: called before the first write with who to tell
+     * the row_id of rows as soon as they are committed, so that they aren't sent again.
+     */
+    default void setCommitListener(Consumer<Collection<String>> listener) {
+    }
+
+    /**
+     * Summarizes, per test method, the results stored for a module in the last days.  Called
+     * without {@link #open}, so it must neither create nor alter any table, and never while
+     * tests wait for it.
+     * @return the statistics, or an empty list if this sink can't be queried.
+     */
+    default List<TestStats> readHistory(String dbName, String tableName, String moduleName, int days) throws Exception {
+        return List.of();
+    }
+
+    /**
+     * Recomputes whatever the sink keeps pre-aggregated (e.g. daily summaries) for the module.
+     * Called at most once per build, by the reporter that finishes it, after {@link #close()}.
+     */
+    default void updateSummaries(String moduleName) throws Exception {
+    }
+
+    /**
+     * Called once every batch has been written.
+     */
+    @Override
+    default void close() throws Exception {
+    }
+
+    static ResultSink load(String name) {
+        return StreamEx.of(ServiceLoader.load(ResultSink.class).iterator())
+                .findFirst(sink -> sink.getName().equalsIgnoreCase(name))
+                .orElseThrow(() -> new IllegalArgumentException("No ResultSink named " + name + " was found"));
+    }
+}
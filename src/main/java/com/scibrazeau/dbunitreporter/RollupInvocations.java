@@ -0,0 +1,16 @@
+package com.scibrazeau.dbunitreporter;
+
+import java.lang.annotation.*;
+
+/**
+ * Reports all the invocations of a test template (e.g. a @ParameterizedTest) as a single row,
+ * with the number of invocations and failures, their durations, and the arguments and output of
+ * the failed invocations only.  Goes on a test class (for all its templates) or a template
+ * method.  Tagging the class or method with ROLLUP_TAG ("rollup" by default) does the same.
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface RollupInvocations {
+}
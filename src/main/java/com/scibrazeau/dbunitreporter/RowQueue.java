@@ -0,0 +1,211 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Multi-producer / single-consumer queue of rows waiting to be inserted.  Enqueueing is lock
+ * free; what happens once the queue reaches its capacity is decided by an {@link OverflowPolicy}.
+ */
+/* package */ class RowQueue {
+    private final ConcurrentLinkedQueue<Map<String, Object>> rows = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Object spillLock = new Object();
+    private Consumer<Map<String, Object>> dropListener = row -> { };
+    private volatile Thread consumer;
+    private volatile boolean closed;
+    private volatile int pendingSpilled;
+    private File spillFile;
+    private ObjectOutputStream spillOut;
+    private File readFile;
+    private ObjectInputStream spillIn;
+
+    /* package */ RowQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * @param dropListener  called with every row discarded because of the overflow policy.
+     */
+    public void setDropListener(Consumer<Map<String, Object>> dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    public void put(Map<String, Object> row) throws InterruptedException {
+        if (size.incrementAndGet() > capacity && !handleOverflow(row)) {
+            return;
+        }
+        rows.offer(row);
+    }
+
+    /**
+     * Called with the slot for row already reserved (and the queue over capacity).
+     * @return true if row should still be added to the queue.
+     */
+    private boolean handleOverflow(Map<String, Object> row) throws InterruptedException {
+        switch (policy) {
+            case DROP_OLDEST:
+                dropOldest();
+                return true;
+            case DROP_SUCCESS_FIRST:
+                if (Boolean.TRUE.equals(row.get("success"))) {
+                    size.decrementAndGet();
+                    dropped.increment();
+                    dropListener.accept(row);
+                    return false;
+                }
+                if (!dropOldestSuccess()) {
+                    dropOldest();
+                }
+                return true;
+            case SPILL:
+                size.decrementAndGet();
+                spill(row);
+                return false;
+            default:
+                size.decrementAndGet();
+                while (size.get() >= capacity) {
+                    LockSupport.unpark(consumer);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                size.incrementAndGet();
+                return true;
+        }
+    }
+
+    private void dropOldest() {
+        var row = rows.poll();
+        if (row != null) {
+            size.decrementAndGet();
+            dropped.increment();
+            dropListener.accept(row);
+        }
+    }
+
+    private boolean dropOldestSuccess() {
+        for (var row : rows) {
+            // another producer may be removing the same row: only one of them counts it
+            if (Boolean.TRUE.equals(row.get("success")) && rows.remove(row)) {
+                size.decrementAndGet();
+                dropped.increment();
+                dropListener.accept(row);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void spill(Map<String, Object> row) {
+        synchronized (spillLock) {
+            try {
+                if (spillOut == null) {
+                    spillFile = Files.createTempFile("dbunitreporter-", ".rows").toFile();
+                    spillOut = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+                }
+                spillOut.writeObject(row instanceof Serializable ? row : new HashMap<>(row));
+                spillOut.reset();
+                pendingSpilled++;
+                spilled.increment();
+            } catch (IOException e) {
+                ExceptionUtils.rethrow(e);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the next row, waiting up to the given time if none is available.  Must always
+     * be called from the same (consumer) thread.
+     * @return the next row, or null if none was available in time.
+     */
+    public Map<String, Object> poll(long timeout, TimeUnit unit) {
+        consumer = Thread.currentThread();
+        var row = pollNow();
+        if (row == null && !closed) {
+            LockSupport.parkNanos(this, unit.toNanos(timeout));
+            row = pollNow();
+        }
+        return row;
+    }
+
+    private Map<String, Object> pollNow() {
+        var row = rows.poll();
+        if (row != null) {
+            size.decrementAndGet();
+            return row;
+        }
+        return pollSpilled();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> pollSpilled() {
+        try {
+            if (spillIn == null) {
+                if (pendingSpilled == 0) {
+                    return null;
+                }
+                synchronized (spillLock) {
+                    spillOut.close();
+                    spillOut = null;
+                    readFile = spillFile;
+                    pendingSpilled = 0;
+                }
+                spillIn = new ObjectInputStream(new BufferedInputStream(new FileInputStream(readFile)));
+            }
+            try {
+                return (Map<String, Object>) spillIn.readObject();
+            } catch (EOFException e) {
+                spillIn.close();
+                spillIn = null;
+                Files.deleteIfExists(readFile.toPath());
+                return pollSpilled();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            return ExceptionUtils.rethrow(e);
+        }
+    }
+
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * No more rows will be added.  Wakes up the consumer so it can drain what's left.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * @return true once {@link #close()} was called and every row has been polled.
+     */
+    public boolean isDrained() {
+        return closed && size.get() <= 0 && pendingSpilled == 0 && spillIn == null;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSpilled() {
+        return spilled.sum();
+    }
+}
@@ -0,0 +1,188 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.EntryStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Test durations of the current run, kept locally: a {@link LatencyHistogram} for the module and
+ * one per test class, plus the slowest tests.  Summarized in the log (and optionally a JSON file)
+ * when the run closes, whether or not results could be sent to the sink.
+ */
+/* package */ class RunStatistics {
+    private static final Logger LOGGER = LogManager.getLogger(RunStatistics.class);
+
+    /**
+     * One test, for the slowest tests list.
+     */
+    /* package */ static final class SlowTest {
+        private final String className;
+        private final String methodName;
+        private final long durationMs;
+
+        private SlowTest(String className, String methodName, long durationMs) {
+            this.className = className;
+            this.methodName = methodName;
+            this.durationMs = durationMs;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+    }
+
+    private final String moduleName;
+    private final int topN;
+    private final LatencyHistogram module = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> classes = new ConcurrentHashMap<>();
+    private final PriorityQueue<SlowTest> slowest = new PriorityQueue<>(Comparator.comparingLong(SlowTest::getDurationMs));
+    // the shortest of the slowest tests, so most tests never need the lock
+    private volatile long slowestThreshold = -1;
+
+    /* package */ RunStatistics(String moduleName, int topN) {
+        this.moduleName = moduleName;
+        this.topN = topN;
+    }
+
+    public void record(String className, String methodName, long durationMs) {
+        module.record(durationMs);
+        classes.computeIfAbsent(className, c -> new LatencyHistogram()).record(durationMs);
+        if (topN > 0 && durationMs > slowestThreshold) {
+            synchronized (slowest) {
+                slowest.add(new SlowTest(className, methodName, durationMs));
+                if (slowest.size() > topN) {
+                    slowest.poll();
+                }
+                if (slowest.size() == topN) {
+                    slowestThreshold = slowest.peek().getDurationMs();
+                }
+            }
+        }
+    }
+
+    public LatencyHistogram getModule() {
+        return module;
+    }
+
+    public Map<String, LatencyHistogram> getClasses() {
+        return classes;
+    }
+
+    /**
+     * @return the slowest tests, slowest first.
+     */
+    public List<SlowTest> getSlowest() {
+        synchronized (slowest) {
+            var result = new ArrayList<>(slowest);
+            result.sort(Comparator.comparingLong(SlowTest::getDurationMs).reversed());
+            return result;
+        }
+    }
+
+    private static String summarize(LatencyHistogram histogram) {
+        return String.format("count=%d p50=%d p90=%d p99=%d max=%d",
+                histogram.getCount(),
+                histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99),
+                histogram.getMax());
+    }
+
+    /**
+     * Logs the durations of the module, of the classes that took the most time, and the slowest
+     * tests.
+     */
+    public void log() {
+        if (module.getCount() == 0) {
+            return;
+        }
+        var message = new StringBuilder("Test durations (ms) of ").append(moduleName).append(": ").append(summarize(module));
+        var slowestClasses = EntryStream.of(classes)
+                .reverseSorted(Comparator.comparingLong(e -> e.getValue().getTotal()))
+                .limit(topN)
+                .toList();
+        if (!slowestClasses.isEmpty()) {
+            message.append("\n  Classes taking the most time:");
+            for (var entry : slowestClasses) {
+                message.append(String.format("%n    %-60s total=%d %s", entry.getKey(), entry.getValue().getTotal(), summarize(entry.getValue())));
+            }
+        }
+        var slowestTests = getSlowest();
+        if (!slowestTests.isEmpty()) {
+            message.append("\n  Slowest tests:");
+            for (var test : slowestTests) {
+                message.append(String.format("%n    %8d  %s.%s", test.getDurationMs(), test.getClassName(), test.getMethodName()));
+            }
+        }
+        LOGGER.info(message);
+    }
+
+    /**
+     * Writes the same information as {@link #log()}, for every class, as JSON.
+     */
+    public void writeJson(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            Files.createDirectories(file.getParentFile().toPath());
+        }
+        try (var out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("{\"module\":");
+            NdjsonWriter.writeString(out, moduleName);
+            out.write(",\"durations\":");
+            writeHistogram(out, module);
+            out.write(",\"classes\":{");
+            boolean first = true;
+            for (var entry : EntryStream.of(classes).sortedBy(Map.Entry::getKey)) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                NdjsonWriter.writeString(out, entry.getKey());
+                out.write(':');
+                writeHistogram(out, entry.getValue());
+            }
+            out.write("},\"slowest\":[");
+            first = true;
+            for (var test : getSlowest()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("{\"class\":");
+                NdjsonWriter.writeString(out, test.getClassName());
+                out.write(",\"method\":");
+                NdjsonWriter.writeString(out, test.getMethodName());
+                out.write(",\"duration\":" + test.getDurationMs() + "}");
+            }
+            out.write("]}\n");
+        }
+    }
+
+    private static void writeHistogram(Writer out, LatencyHistogram histogram) throws IOException {
+        out.write(String.format(Locale.ROOT, "{\"count\":%d,\"total\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}",
+                histogram.getCount(),
+                histogram.getTotal(),
+                histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99),
+                histogram.getMax()));
+    }
+}
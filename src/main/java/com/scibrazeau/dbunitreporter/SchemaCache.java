@@ -0,0 +1,70 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.TableDefinition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Remembers, on the local disk, the fingerprint of the definition (schema, partitioning and
+ * clustering) last synchronized with each table.  When the fingerprint still matches, the table
+ * is known to be up to date and the remote lookup / schema comparison can be skipped.
+ */
+/* package */ class SchemaCache {
+    private static final Logger LOGGER = LogManager.getLogger(SchemaCache.class);
+
+    private final File dir;
+
+    /* package */ SchemaCache(File dir) {
+        this.dir = dir;
+    }
+
+    /* package */ static String fingerprint(TableDefinition definition) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(definition.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private File file(String table) {
+        return new File(dir, table.replaceAll("[^A-Za-z0-9_.-]", "_") + ".schema");
+    }
+
+    public boolean isCurrent(String table, TableDefinition definition) {
+        var file = file(table);
+        try {
+            return file.isFile() && Files.readString(file.toPath()).trim().equals(fingerprint(definition));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void update(String table, TableDefinition definition) {
+        try {
+            Files.createDirectories(dir.toPath());
+            Files.writeString(file(table).toPath(), fingerprint(definition));
+        } catch (IOException e) {
+            LOGGER.debug("Could not update schema cache for {}", table, e);
+        }
+    }
+
+    /**
+     * Forgets what was cached for the given table, e.g. because it turned out not to exist.
+     */
+    public void invalidate(String table) {
+        try {
+            Files.deleteIfExists(file(table).toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Could not invalidate schema cache for {}", table, e);
+        }
+    }
+}
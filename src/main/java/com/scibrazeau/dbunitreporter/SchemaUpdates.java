@@ -3,27 +3,140 @@ package com.scibrazeau.dbunitreporter;
 import com.google.cloud.bigquery.*;
 import com.google.common.base.Preconditions;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class SchemaUpdates {
-    private final BigQuery bq;
+    private static final Logger LOGGER = LogManager.getLogger(SchemaUpdates.class);
+
+    /* package */ static final String PARTITIONING_FIELD = "start_time";
+    /* package */ static final List<String> CLUSTERING_FIELDS = List.of("branch_tag", "module_name", "class_name");
+
+    private final TableAdminClient client;
+    private final String projectId;
     private final String tableName;
     private final String dbName;
 
-    /* package */ SchemaUpdates(BigQuery bq, String dbName, String tableName) {
-        this.bq = bq;
+    /* package */ SchemaUpdates(TableAdminClient client, String projectId, String dbName, String tableName) {
+        this.client = client;
+        this.projectId = projectId;
         this.tableName = tableName;
         this.dbName = dbName;
     }
 
+    /**
+     * @return the definition of a new result table: partitioned on the day of start_time, and
+     *         clustered on branch_tag, module_name and class_name, so queries on recent results
+     *         of a branch or module only scan those.
+     */
+    /* package */ static StandardTableDefinition newDefinition(Schema schema) {
+        return StandardTableDefinition.newBuilder()
+                .setSchema(schema)
+                .setTimePartitioning(TimePartitioning.newBuilder(TimePartitioning.Type.DAY)
+                        .setField(PARTITIONING_FIELD)
+                        .build())
+                .setClustering(Clustering.newBuilder().setFields(CLUSTERING_FIELDS).build())
+                .build();
+    }
+
+    /* package */ static boolean isPartitioned(TableInfo table) {
+        var definition = table.getDefinition();
+        return !(definition instanceof StandardTableDefinition)
+                || ((StandardTableDefinition) definition).getTimePartitioning() != null
+                || ((StandardTableDefinition) definition).getRangePartitioning() != null;
+    }
+
     private static boolean hasField(Schema existingSchema, String fieldName) {
         return existingSchema.getFields().stream().anyMatch(f -> f.getName().equals(fieldName));
     }
 
-    public void synchSchema(Schema officialSchema) {
-        var existingTable = this.bq.getTable(dbName, tableName);
+    private String qualifiedName(String table) {
+        return "`" + projectId + "." + dbName + "." + table + "`";
+    }
+
+    /**
+     * Brings a table created by an older version up to the layout of {@link #newDefinition(Schema)}.
+     * Clustering is added in place.  Partitioning can't be added to an existing table, so when
+     * migratePartitioning is set the table is copied into a partitioned one, which then takes its
+     * name (the original is kept as {table}_unpartitioned); otherwise it is left unpartitioned.
+     * The migration is postponed while the table has rows in its streaming buffer (it can't be
+     * renamed until they are flushed), and never attempted again while the copy of an earlier
+     * attempt exists, so it is neither repeated by every fork nor by every run.
+     * @return the table, updated if needed.
+     */
+    public TableInfo synchLayout(TableInfo existingTable, boolean migratePartitioning) throws InterruptedException {
+        if (!(existingTable.getDefinition() instanceof StandardTableDefinition)) {
+            return existingTable;
+        }
+        if (!isPartitioned(existingTable)) {
+            if (migratePartitioning && canMigrate(existingTable)) {
+                LOGGER.info("Migrating {}.{} to a partitioned table, keeping the original as {}_unpartitioned", dbName, tableName, tableName);
+                client.execute(QueryJobConfiguration.newBuilder(migrationScript(existingTable.getDefinition().getSchema()))
+                        .setUseLegacySql(false)
+                        .build());
+                return client.getTable(existingTable.getTableId());
+            }
+            LOGGER.warn("{}.{} is not partitioned, so every query on it scans all results. Set MIGRATE_PARTITIONING=true to migrate it.", dbName, tableName);
+        }
+        StandardTableDefinition definition = existingTable.getDefinition();
+        if (definition.getClustering() != null) {
+            return existingTable;
+        }
+        return client.update(existingTable.toBuilder()
+                .setDefinition(definition.toBuilder()
+                        .setClustering(Clustering.newBuilder().setFields(CLUSTERING_FIELDS).build())
+                        .build())
+                .build());
+    }
+
+    private boolean canMigrate(TableInfo existingTable) {
+        StandardTableDefinition definition = existingTable.getDefinition();
+        if (definition.getStreamingBuffer() != null) {
+            LOGGER.info("{}.{} has rows in its streaming buffer. Migrating it to a partitioned table once they are flushed.", dbName, tableName);
+            return false;
+        }
+        var newTable = tableName + "__partitioned";
+        if (client.getTable(TableId.of(dbName, newTable)) != null) {
+            LOGGER.warn("{}.{} exists, left by a migration that is running or failed. Drop it to migrate {} again.", dbName, newTable, tableName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a script copying the table into a partitioned and clustered one that takes its name.
+     *         Column defaults are not copied by CREATE TABLE ... AS SELECT, so they are set again.
+     *         The copy fails if it already exists, so JVMs starting together migrate only once.
+     */
+    /* package */ String migrationScript(Schema existingSchema) {
+        var newTable = tableName + "__partitioned";
+        var script = new StringBuilder()
+                .append("CREATE TABLE ").append(qualifiedName(newTable)).append('\n')
+                .append("PARTITION BY DATETIME_TRUNC(").append(PARTITIONING_FIELD).append(", DAY)\n")
+                .append("CLUSTER BY ").append(String.join(", ", CLUSTERING_FIELDS)).append('\n')
+                .append("AS SELECT * FROM ").append(qualifiedName(tableName)).append(";\n")
+                .append("ALTER TABLE ").append(qualifiedName(tableName)).append(" RENAME TO `").append(tableName).append("_unpartitioned`;\n")
+                .append("ALTER TABLE ").append(qualifiedName(newTable)).append(" RENAME TO `").append(tableName).append("`;\n");
+        if (existingSchema != null) {
+            for (Field field : existingSchema.getFields()) {
+                if (!StringUtils.isEmpty(field.getDefaultValueExpression())) {
+                    script.append("ALTER TABLE ").append(qualifiedName(tableName))
+                            .append(" ALTER COLUMN ").append(field.getName())
+                            .append(" SET DEFAULT ").append(field.getDefaultValueExpression()).append(";\n");
+                }
+            }
+        }
+        return script.toString();
+    }
+
+    /**
+     * @param existingTable the table, as already retrieved by the caller.
+     * @return the table, updated if needed.
+     */
+    public TableInfo synchSchema(TableInfo existingTable, Schema officialSchema) throws InterruptedException {
         var existingSchema = existingTable.getDefinition().getSchema();
         Preconditions.checkNotNull(existingSchema);
         // Create a new schema adding the current fields, plus any new ones
@@ -52,17 +165,17 @@ public class SchemaUpdates {
             }
         }
         if (!doUpdate) {
-            return;
+            return existingTable;
         }
         Schema newSchema = Schema.of(fieldList);
-        Table updatedTable = existingTable.toBuilder().setDefinition(StandardTableDefinition.of(newSchema)).build();
-        updatedTable.update();
-        postStatements.forEach(s -> {
-            try {
-                this.bq.query(s);
-            } catch (InterruptedException e) {
-                ExceptionUtils.rethrow(e);
-            }
-        });
+        // keeps the partitioning and clustering of the table
+        StandardTableDefinition definition = existingTable.getDefinition();
+        TableInfo updatedTable = client.update(existingTable.toBuilder()
+                .setDefinition(definition.toBuilder().setSchema(newSchema).build())
+                .build());
+        for (var statement : postStatements) {
+            client.execute(statement);
+        }
+        return updatedTable;
     }
 }
@@ -0,0 +1,168 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.platform.engine.FilterResult;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.PostDiscoveryFilter;
+
+import java.util.*;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Keeps only this CI agent's share of the tests, when SHARD_COUNT is more than 1.  Test classes
+ * are packed into SHARD_COUNT shards of about the same predicted time (longest processing time
+ * first), predicted from the median durations of past runs ({@link TestHistory}); methods without
+ * history count as the median of those with, or SHARD_DEFAULT_MS.  SHARD_INDEX (0 based) picks
+ * the shard to run.  The assignment only depends on the discovered tests and the history, so
+ * agents that use the same history agree on it without talking to each other.  Since the
+ * default history file is local to each agent, sharding requires either HISTORY_FILE (a file
+ * every agent shares) or HISTORY_SNAPSHOT (the fingerprint every agent's history must have,
+ * as logged by a previous run); the history is then never refreshed during the run.
+ */
+public class ShardFilter implements PostDiscoveryFilter {
+    private static final Logger LOGGER = LogManager.getLogger(ShardFilter.class);
+
+    private final int index;
+    private final int count;
+    private final Map<UniqueId, Map<String, Integer>> assignments = new HashMap<>();
+    private TestHistory history;
+
+    public ShardFilter() {
+        this(Integer.parseInt(getPropValue("SHARD_INDEX", "0")), Integer.parseInt(getPropValue("SHARD_COUNT", "1")), null);
+    }
+
+    /* package */ ShardFilter(int index, int count, TestHistory history) {
+        if (count > 1 && (index < 0 || index >= count)) {
+            throw new IllegalArgumentException("SHARD_INDEX must be between 0 and " + (count - 1) + ", was " + index);
+        }
+        this.index = index;
+        this.count = count;
+        this.history = history;
+    }
+
+    @Override
+    public FilterResult apply(TestDescriptor descriptor) {
+        if (count <= 1) {
+            return FilterResult.included("not sharding");
+        }
+        var testClass = getTopLevelClass(descriptor);
+        int shard;
+        if (testClass == null) {
+            shard = Math.floorMod(descriptor.getUniqueId().toString().hashCode(), count);
+        } else {
+            var root = descriptor;
+            while (root.getParent().isPresent()) {
+                root = root.getParent().get();
+            }
+            shard = getAssignment(root).getOrDefault(testClass, index);
+        }
+        return shard == index ?
+                FilterResult.included("in shard " + index) :
+                FilterResult.excluded("in shard " + shard);
+    }
+
+    private synchronized Map<String, Integer> getAssignment(TestDescriptor root) {
+        return assignments.computeIfAbsent(root.getUniqueId(), id -> {
+            if (history == null) {
+                history = loadHistory();
+            }
+            var predicted = predict(root);
+            var assignment = assign(predicted, count);
+            long shardTotal = 0;
+            int classes = 0;
+            for (var entry : assignment.entrySet()) {
+                if (entry.getValue() == index) {
+                    shardTotal += predicted.get(entry.getKey());
+                    classes++;
+                }
+            }
+            LOGGER.info("Running shard {} of {}: {} of {} test classes, predicted to take {} ms (history fingerprint {})",
+                    index, count, classes, assignment.size(), shardTotal, history.getFingerprint());
+            return assignment;
+        });
+    }
+
+    /**
+     * Agents with different histories would disagree on the assignment, skipping some classes
+     * (or running them twice), so refuse to shard unless every agent is known to agree.
+     */
+    private static TestHistory loadHistory() {
+        var snapshot = getPropValue("HISTORY_SNAPSHOT");
+        if (StringUtils.isEmpty(snapshot) && StringUtils.isEmpty(getPropValue("HISTORY_FILE"))) {
+            throw new IllegalStateException("SHARD_COUNT > 1 requires HISTORY_FILE (a history file shared by every agent) " +
+                    "or HISTORY_SNAPSHOT (the history fingerprint every agent must use)");
+        }
+        var history = TestHistory.get();
+        if (!StringUtils.isEmpty(snapshot) && !snapshot.equals(history.getFingerprint())) {
+            throw new IllegalStateException("The test history has fingerprint " + history.getFingerprint() +
+                    ", not HISTORY_SNAPSHOT=" + snapshot + "; shards would not agree on the assignment");
+        }
+        return history;
+    }
+
+    /**
+     * @return the predicted time of each top level test class under root, in milliseconds.
+     */
+    private Map<String, Long> predict(TestDescriptor root) {
+        long fallback = history.getMedianMethodDuration(Long.parseLong(getPropValue("SHARD_DEFAULT_MS", "100")));
+        var predicted = new HashMap<String, Long>();
+        for (var descriptor : root.getDescendants()) {
+            var testClass = getTopLevelClass(descriptor);
+            if (testClass == null || !descriptor.getChildren().isEmpty()) {
+                continue;
+            }
+            long duration = descriptor.getSource()
+                    .filter(MethodSource.class::isInstance)
+                    .map(MethodSource.class::cast)
+                    .map(source -> history.getMethodStats(source.getJavaMethod().getDeclaringClass(), source.getMethodName()))
+                    .map(TestStats::getMedianDuration)
+                    .orElse(fallback);
+            predicted.merge(testClass, duration, Long::sum);
+        }
+        return predicted;
+    }
+
+    /**
+     * Longest processing time first: the longest classes are placed first, each in the shard
+     * with the least predicted time so far (the lowest numbered one, on ties).
+     * @return the shard of every class.
+     */
+    /* package */ static Map<String, Integer> assign(Map<String, Long> predicted, int count) {
+        var classes = new ArrayList<>(predicted.keySet());
+        classes.sort(Comparator.<String>comparingLong(predicted::get).reversed().thenComparing(Comparator.naturalOrder()));
+        var loads = new long[count];
+        var assignment = new HashMap<String, Integer>();
+        for (String testClass : classes) {
+            int lightest = 0;
+            for (int shard = 1; shard < count; shard++) {
+                if (loads[shard] < loads[lightest]) {
+                    lightest = shard;
+                }
+            }
+            loads[lightest] += predicted.get(testClass);
+            assignment.put(testClass, lightest);
+        }
+        return assignment;
+    }
+
+    /**
+     * @return the name of the outermost class containing the test (nested classes stay with
+     *         their enclosing class), or null if it isn't in a class.
+     */
+    private static String getTopLevelClass(TestDescriptor descriptor) {
+        String testClass = null;
+        for (var current = Optional.of(descriptor); current.isPresent(); current = current.get().getParent()) {
+            var source = current.get().getSource();
+            if (source.isPresent() && source.get() instanceof ClassSource) {
+                testClass = ((ClassSource) source.get()).getClassName();
+            }
+        }
+        return testClass;
+    }
+}
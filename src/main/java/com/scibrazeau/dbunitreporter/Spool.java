@@ -0,0 +1,267 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Append-only, memory-mapped write-ahead log of the rows handed to the reporter.  Every row is
+ * written before it is queued (so it survives a sink that never opens, or a queue that backs
+ * up), and acknowledged once its sink has stored it.  If the JVM dies before all rows were sent (killed,
+ * fork timeout, ...), the next run recovers the rows that were never acknowledged.  Each JVM owns (and locks) its own spool file, so concurrent forks
+ * never recover each other's rows.
+ *
+ * <p>Each record is [length][type][payload], where the length is written last so that a
+ * record cut short by a crash is never read back.  A zero length marks the end of the records,
+ * a negative one the number of bytes left unused (itself included) at the end of a mapped region.
+ * Spool directories may be shared, so only rows are ever deserialized from them.</p>
+ */
+/* package */ class Spool implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(Spool.class);
+    private static final String PREFIX = "spool-";
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+    private static final byte ROW = 1;
+    private static final byte ACK = 2;
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long pending;
+    private int maxFiles = Integer.parseInt(getPropValue("SPOOL_MAX_FILES", "10"));
+    private long maxAgeMs = TimeUnit.HOURS.toMillis(Long.parseLong(getPropValue("SPOOL_MAX_AGE_HOURS", "168")));
+    private int maxRows = Integer.parseInt(getPropValue("SPOOL_MAX_ROWS", "100000"));
+
+    private Spool(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lock = channel.lock();
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+    }
+
+    /* package */ static Spool create(File dir) throws IOException {
+        Files.createDirectories(dir.toPath());
+        return new Spool(new File(dir, PREFIX + ProcessHandle.current().pid() + "-" + UUID.randomUUID() + ".dat"));
+    }
+
+    /* package */ void setRecoveryLimits(int maxFiles, long maxAgeMs, int maxRows) {
+        this.maxFiles = maxFiles;
+        this.maxAgeMs = maxAgeMs;
+        this.maxRows = maxRows;
+    }
+
+    public synchronized void append(Map<String, Object> row) {
+        write(ROW, serialize(row));
+        pending++;
+    }
+
+    /**
+     * Records that the given rows were stored (or deliberately discarded) and don't need to be
+     * recovered.
+     */
+    public synchronized void ack(Collection<String> rowIds) {
+        var out = new ByteArrayOutputStream();
+        try (var data = new DataOutputStream(out)) {
+            data.writeInt(rowIds.size());
+            for (var rowId : rowIds) {
+                data.writeUTF(rowId);
+            }
+        } catch (IOException e) {
+            ExceptionUtils.rethrow(e);
+        }
+        write(ACK, out.toByteArray());
+        pending -= rowIds.size();
+    }
+
+    private void write(byte type, byte[] payload) {
+        int recordSize = 4 + 1 + payload.length;
+        try {
+            // always keep room for the length that marks the end of the region
+            if (region.remaining() < recordSize + 4) {
+                region.putInt(region.position(), -region.remaining());
+                regionStart += region.capacity();
+                region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, recordSize + 4L));
+            }
+        } catch (IOException e) {
+            ExceptionUtils.rethrow(e);
+        }
+        int start = region.position();
+        region.position(start + 4);
+        region.put(type);
+        region.put(payload);
+        region.putInt(start, payload.length + 1);
+    }
+
+    private static byte[] serialize(Map<String, Object> row) {
+        var out = new ByteArrayOutputStream(256);
+        try (var objects = new ObjectOutputStream(out)) {
+            objects.writeObject(row instanceof Serializable ? row : new HashMap<>(row));
+        } catch (IOException e) {
+            ExceptionUtils.rethrow(e);
+        }
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> deserialize(ByteBuffer payload) throws IOException, ClassNotFoundException {
+        var bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (var objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            objects.setObjectInputFilter(ForkAggregator.ROWS_ONLY);
+            return (Map<String, Object>) objects.readObject();
+        }
+    }
+
+    /**
+     * Moves every unacknowledged row of the spool files left behind by previous runs into this
+     * spool, hands it to the consumer, then deletes those files.  Doesn't need a sink, so that
+     * files don't pile up while it is unreachable.  Files still locked by a running JVM are left
+     * alone.  A row found in more than one file is only handed over once.  Only the SPOOL_MAX_FILES
+     * most recent files, written in the last SPOOL_MAX_AGE_HOURS, are recovered (the others are
+     * deleted), and at most SPOOL_MAX_ROWS rows.
+     * @return the number of rows recovered.
+     */
+    /* package */ int recoverInto(Consumer<Map<String, Object>> consumer) {
+        var files = file.getParentFile().listFiles((d, name) -> name.startsWith(PREFIX) && !name.equals(file.getName()));
+        if (files == null) {
+            return 0;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long oldest = System.currentTimeMillis() - maxAgeMs;
+        var seen = new HashSet<String>();
+        int recovered = 0;
+        int discarded = 0;
+        for (int i = 0; i < files.length; i++) {
+            var old = files[i];
+            try (var oldChannel = FileChannel.open(old.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                var fileLock = tryLock(oldChannel);
+                if (fileLock == null) {
+                    continue;
+                }
+                if (i >= maxFiles || old.lastModified() < oldest) {
+                    LOGGER.warn("Discarding {}: too old, or too many spool files", old);
+                } else {
+                    for (var row : readUnacknowledged(old, oldChannel)) {
+                        if (!seen.add((String) row.get("row_id"))) {
+                            continue;
+                        }
+                        if (recovered >= maxRows) {
+                            discarded++;
+                            continue;
+                        }
+                        // written here first, so the row survives if this JVM dies too
+                        append(row);
+                        consumer.accept(row);
+                        recovered++;
+                    }
+                }
+                fileLock.release();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Could not recover test results from {}", old, e);
+                continue;
+            }
+            try {
+                Files.delete(old.toPath());
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete {}", old, e);
+            }
+        }
+        if (discarded > 0) {
+            LOGGER.warn("Discarded {} test results left unsent by previous runs, beyond the {} that are recovered", discarded, maxRows);
+        }
+        return recovered;
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by this JVM
+            return null;
+        }
+    }
+
+    /**
+     * Reads records up to the first one that can't be complete (a file cut short, or not a spool
+     * file at all); a row that can't be deserialized is skipped.
+     */
+    private static Collection<Map<String, Object>> readUnacknowledged(File file, FileChannel channel) throws IOException {
+        var rows = new LinkedHashMap<String, Map<String, Object>>();
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length == 0) {
+                break;
+            }
+            if (length < 0) {
+                // the end of a mapped region; records continue in the next one
+                if (-length < 4 || -length - 4 > buffer.remaining()) {
+                    break;
+                }
+                buffer.position(buffer.position() - length - 4);
+                continue;
+            }
+            if (length > buffer.remaining()) {
+                LOGGER.warn("{} is truncated", file);
+                break;
+            }
+            byte type = buffer.get();
+            var payload = buffer.slice();
+            payload.limit(length - 1);
+            buffer.position(buffer.position() + length - 1);
+            if (type == ROW) {
+                try {
+                    var row = deserialize(payload);
+                    rows.put((String) row.get("row_id"), row);
+                } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                    LOGGER.warn("Skipping a test result of {} that can't be read", file, e);
+                }
+            } else if (type == ACK) {
+                int count = payload.getInt();
+                for (int i = 0; i < count; i++) {
+                    rows.remove(readUTF(payload));
+                }
+            }
+        }
+        return rows.values();
+    }
+
+    private static String readUTF(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes the spool file when every row was acknowledged.  Otherwise, it is kept so the
+     * next run can recover the missing rows.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        region.force();
+        lock.release();
+        channel.close();
+        if (pending <= 0) {
+            Files.deleteIfExists(file.toPath());
+        } else {
+            LOGGER.warn("{} test results could not be sent. They will be sent by the next run (from {})", pending, file);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.scibrazeau.dbunitreporter;
+
+/**
+ * What to keep of a test's stdout/stderr (see STDOUT_POLICY).
+ */
+public enum StdoutPolicy {
+    /**
+     * Keep all output, spilling whatever doesn't fit the memory budget to a temp file.  At most
+     * STDOUT_SPILL_MAX_KB of the spilled part is read back into the row.
+     */
+    ALWAYS,
+    /** Like ALWAYS, but only for failed tests; output of successful tests is dropped. */
+    ON_FAILURE,
+    /** Keep at most STDOUT_MAX_KB of output: its beginning and its end. */
+    CAPPED
+}
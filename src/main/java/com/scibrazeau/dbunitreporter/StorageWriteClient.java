@@ -0,0 +1,36 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.storage.v1.ProtoRows;
+import com.google.cloud.bigquery.storage.v1.ProtoSchema;
+
+import java.util.List;
+
+/**
+ * The subset of the BigQuery Storage Write API used by {@link StorageWriteSink}, kept behind
+ * an interface so the sink can be exercised without a connection to BigQuery.
+ */
+/* package */ interface StorageWriteClient extends AutoCloseable {
+    /**
+     * @param table projects/{project}/datasets/{dataset}/tables/{table}
+     * @return the name of a new PENDING write stream on that table.
+     */
+    String createPendingStream(String table);
+
+    /**
+     * Appends rows to a stream, waiting for them to be acknowledged.
+     */
+    void append(String stream, ProtoSchema schema, ProtoRows rows, long offset) throws Exception;
+
+    /**
+     * @return the number of rows appended to the stream.
+     */
+    long finalizeStream(String stream);
+
+    /**
+     * Atomically makes the rows of the given (finalized) streams visible.
+     */
+    void commit(String table, List<String> streams);
+
+    @Override
+    void close();
+}
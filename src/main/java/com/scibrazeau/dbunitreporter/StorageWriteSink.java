@@ -0,0 +1,214 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import com.google.cloud.bigquery.storage.v1.ProtoRows;
+import com.google.cloud.bigquery.storage.v1.ProtoSchema;
+import com.google.cloud.bigquery.storage.v1.ProtoSchemaConverter;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Writes results through the BigQuery Storage Write API (SINK=storageWrite) rather than legacy
+ * streaming inserts.  Rows are appended to PENDING streams (one per concurrent sender) and
+ * committed in a single transaction when the run is closed, so a run's results become visible
+ * all at once.
+ */
+public class StorageWriteSink extends BigQueryResultSink {
+    private static final Logger LOGGER = LogManager.getLogger(StorageWriteSink.class);
+
+    private static class PendingStream {
+        private final String name;
+        private long offset;
+        private final List<String> rowIds = new ArrayList<>();
+
+        PendingStream(String name) {
+            this.name = name;
+        }
+    }
+
+    private StorageWriteClient client;
+    private String table;
+    private Descriptors.Descriptor descriptor;
+    private ProtoSchema protoSchema;
+    private final Queue<PendingStream> idle = new ConcurrentLinkedQueue<>();
+    private final List<PendingStream> streams = Collections.synchronizedList(new ArrayList<>());
+    private Consumer<Collection<String>> commitListener = rowIds -> { };
+
+    public StorageWriteSink() {
+    }
+
+    /* package */ StorageWriteSink(StorageWriteClient client, String projectId, String dbName, String tableName, Schema schema) {
+        init(client, projectId, dbName, tableName, schema);
+    }
+
+    private void init(StorageWriteClient client, String projectId, String dbName, String tableName, Schema schema) {
+        this.client = client;
+        this.table = String.format("projects/%s/datasets/%s/tables/%s", projectId, dbName, tableName);
+        this.descriptor = toDescriptor(schema);
+        this.protoSchema = ProtoSchemaConverter.convert(this.descriptor);
+    }
+
+    @Override
+    public String getName() {
+        return "storageWrite";
+    }
+
+    @Override
+    public void open(String dbName, String tableName, Schema schema) throws IOException, InterruptedException {
+        super.open(dbName, tableName, schema);
+        init(new GrpcStorageWriteClient(getCredentials()), getBigQuery().getOptions().getProjectId(), dbName, tableName, schema);
+    }
+
+    /**
+     * Builds the protobuf message type matching the table schema.  Columns with a default
+     * value expression are left out so BigQuery fills them in.
+     */
+    /* package */ static Descriptors.Descriptor toDescriptor(Schema schema) {
+        var message = DescriptorProto.newBuilder().setName("TestResult");
+        int number = 1;
+        for (Field field : schema.getFields()) {
+            if (!StringUtils.isEmpty(field.getDefaultValueExpression())) {
+                continue;
+            }
+            message.addField(FieldDescriptorProto.newBuilder()
+                    .setName(field.getName())
+                    .setNumber(number++)
+                    .setType(toProtoType(field.getType().getStandardType()))
+                    .setLabel(field.getMode() == Field.Mode.REPEATED ?
+                            FieldDescriptorProto.Label.LABEL_REPEATED :
+                            FieldDescriptorProto.Label.LABEL_OPTIONAL)
+            );
+        }
+        var file = FileDescriptorProto.newBuilder().addMessageType(message).build();
+        try {
+            return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0])
+                    .findMessageTypeByName("TestResult");
+        } catch (Descriptors.DescriptorValidationException e) {
+            return ExceptionUtils.rethrow(e);
+        }
+    }
+
+    private static FieldDescriptorProto.Type toProtoType(StandardSQLTypeName type) {
+        switch (type) {
+            case INT64:
+                return FieldDescriptorProto.Type.TYPE_INT64;
+            case FLOAT64:
+                return FieldDescriptorProto.Type.TYPE_DOUBLE;
+            case BOOL:
+                return FieldDescriptorProto.Type.TYPE_BOOL;
+            default:
+                // STRING, and DATETIME which the Write API accepts in its canonical string form
+                return FieldDescriptorProto.Type.TYPE_STRING;
+        }
+    }
+
+    /* package */ DynamicMessage toMessage(Map<String, Object> row) {
+        var builder = DynamicMessage.newBuilder(descriptor);
+        for (var field : descriptor.getFields()) {
+            var value = row.get(field.getName());
+            if (value == null) {
+                continue;
+            }
+            if (field.isRepeated()) {
+                var values = value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+                for (Object v : values) {
+                    builder.addRepeatedField(field, toProtoValue(field, v));
+                }
+            } else {
+                builder.setField(field, toProtoValue(field, value));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Object toProtoValue(Descriptors.FieldDescriptor field, Object value) {
+        switch (field.getJavaType()) {
+            case LONG:
+                return ((Number) value).longValue();
+            case DOUBLE:
+                return ((Number) value).doubleValue();
+            case BOOLEAN:
+                return value;
+            default:
+                return value.toString();
+        }
+    }
+
+    @Override
+    public void write(List<Map<String, Object>> batch) throws Exception {
+        var rows = ProtoRows.newBuilder();
+        for (var row : batch) {
+            rows.addSerializedRows(toMessage(row).toByteString());
+        }
+        var stream = idle.poll();
+        if (stream == null) {
+            stream = new PendingStream(client.createPendingStream(table));
+            streams.add(stream);
+        }
+        try {
+            client.append(stream.name, protoSchema, rows.build(), stream.offset);
+        } catch (Exception e) {
+            // the stream may be broken, or the append may have landed anyway (so appending the
+            // same offset again would fail): later batches go to a new stream.  The rows already
+            // acknowledged on this one are still committed on close.
+            LOGGER.debug("Retiring write stream {} at offset {}", stream.name, stream.offset, e);
+            throw e;
+        }
+        stream.offset += batch.size();
+        for (var row : batch) {
+            stream.rowIds.add((String) row.get("row_id"));
+        }
+        idle.add(stream);
+    }
+
+    @Override
+    public boolean commitsOnClose() {
+        return true;
+    }
+
+    @Override
+    public void setCommitListener(Consumer<Collection<String>> listener) {
+        this.commitListener = listener;
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        try {
+            if (streams.isEmpty()) {
+                return;
+            }
+            long rows = 0;
+            var names = new ArrayList<String>();
+            var rowIds = new ArrayList<String>();
+            for (var stream : streams) {
+                long streamRows = client.finalizeStream(stream.name);
+                if (streamRows > stream.offset) {
+                    LOGGER.warn("A batch reported as failed was written to {} anyway; its {} test results may be sent again by the next run",
+                            stream.name, streamRows - stream.offset);
+                }
+                rows += streamRows;
+                names.add(stream.name);
+                rowIds.addAll(stream.rowIds);
+            }
+            client.commit(table, names);
+            LOGGER.info("Committed {} test results from {} write streams", rows, names.size());
+            commitListener.accept(rowIds);
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import com.google.cloud.bigquery.TableId;
+import com.google.cloud.bigquery.TableInfo;
+
+/**
+ * The subset of the BigQuery API used to create and migrate tables ({@link SchemaUpdates},
+ * {@link DailySummary}), kept behind an interface so the generated definitions and DDL can be
+ * checked without a connection to BigQuery.
+ */
+/* package */ interface TableAdminClient {
+    /**
+     * @return the table, or null if it doesn't exist.
+     */
+    TableInfo getTable(TableId table);
+
+    TableInfo create(TableInfo table);
+
+    TableInfo update(TableInfo table);
+
+    /**
+     * Runs a statement (or script), waiting for it to complete.
+     */
+    void execute(QueryJobConfiguration statement) throws InterruptedException;
+}
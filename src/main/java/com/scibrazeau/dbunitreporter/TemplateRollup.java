@@ -0,0 +1,135 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * The invocations of one test template (see {@link RollupInvocations}), rolled up into a single
+ * row: number of invocations and failures, min / mean / max / p95 durations, and the arguments
+ * and output of the failed invocations only.  Kept in the template's store, so the row is
+ * emitted when the template completes.
+ */
+/* package */ class TemplateRollup implements ExtensionContext.Store.CloseableResource {
+    /* package */ static final String METHOD_DESC = "[rollup]";
+
+    private final String nodeId;
+    private final String parentId;
+    private final int maxFailedArguments;
+    private final int maxStdoutChars;
+    private final Consumer<TestResultRow> emitter;
+    private final LatencyHistogram durations = new LatencyHistogram();
+    private final List<String> failedArguments = new ArrayList<>();
+    private final StringBuilder failedStdout = new StringBuilder();
+    private final TreeSet<String> tags = new TreeSet<>();
+    private TestResultRow first;
+    private long startMillis = Long.MAX_VALUE;
+    private long endMillis = Long.MIN_VALUE;
+    private long minDuration = Long.MAX_VALUE;
+    private long invocations;
+    private long failures;
+    private long stdoutBytes;
+    private boolean stdoutTruncated;
+
+    /**
+     * @param nodeId                the unique id of the template.
+     * @param parentId              the unique id of its class.
+     * @param maxFailedArguments    how many failed invocations have their arguments (and output)
+     *                              kept.  All failures are counted regardless.
+     * @param maxStdoutChars        how much output of failed invocations is kept, in total.
+     * @param emitter               receives the rolled up row.
+     */
+    /* package */ TemplateRollup(String nodeId, String parentId, int maxFailedArguments, int maxStdoutChars, Consumer<TestResultRow> emitter) {
+        this.nodeId = nodeId;
+        this.parentId = parentId;
+        this.maxFailedArguments = maxFailedArguments;
+        this.maxStdoutChars = maxStdoutChars;
+        this.emitter = emitter;
+    }
+
+    /**
+     * Adds one invocation.  Its output, if any, is only used when it failed.
+     */
+    public synchronized void add(TestResultRow invocation) {
+        if (first == null) {
+            first = invocation;
+        }
+        long duration = invocation.getEndMillis() - invocation.getStartMillis();
+        invocations++;
+        durations.record(duration);
+        minDuration = Math.min(minDuration, duration);
+        startMillis = Math.min(startMillis, invocation.getStartMillis());
+        endMillis = Math.max(endMillis, invocation.getEndMillis());
+        if (invocation.getTags() != null) {
+            tags.addAll(List.of(invocation.getTags()));
+        }
+        if (invocation.isSuccess()) {
+            return;
+        }
+        failures++;
+        if (failedArguments.size() >= maxFailedArguments) {
+            return;
+        }
+        failedArguments.add(invocation.getMethodDesc());
+        var stdout = invocation.getStdout();
+        if (stdout == null || stdout.isEmpty()) {
+            return;
+        }
+        stdoutBytes += invocation.getStdoutBytes();
+        stdoutTruncated |= invocation.isStdoutTruncated();
+        var header = invocation.getMethodDesc() + ":\n";
+        int room = maxStdoutChars - failedStdout.length() - header.length();
+        if (room <= 0) {
+            stdoutTruncated = true;
+            return;
+        }
+        failedStdout.append(header).append(stdout, 0, Math.min(stdout.length(), room));
+        if (stdout.length() > room) {
+            stdoutTruncated = true;
+        } else if (!stdout.endsWith("\n")) {
+            failedStdout.append('\n');
+        }
+    }
+
+    /**
+     * @return the rolled up row, or null if there were no invocations.
+     */
+    /* package */ synchronized TestResultRow toRow() {
+        if (first == null) {
+            return null;
+        }
+        var row = new TestResultRow(
+                first.getRunInfo(),
+                BQTestInterceptor.newRowId(),
+                first.getPackageName(),
+                first.getClassName(),
+                first.getMethodName(),
+                METHOD_DESC,
+                startMillis,
+                endMillis,
+                failures == 0
+        );
+        row.setStdout(failedStdout.length() == 0 ? null : failedStdout.toString(), stdoutBytes, stdoutTruncated);
+        row.setTags(tags.toArray(new String[0]));
+        row.setNode(nodeId, parentId, NodeType.TEMPLATE);
+        row.put("invocations", invocations);
+        row.put("failures", failures);
+        row.put("min_duration", minDuration);
+        row.put("mean_duration", durations.getTotal() / invocations);
+        row.put("max_duration", durations.getMax());
+        row.put("p95_duration", durations.getValueAtPercentile(95));
+        row.put("failed_arguments", failedArguments.toArray(new String[0]));
+        return row;
+    }
+
+    @Override
+    public void close() {
+        var row = toRow();
+        if (row != null) {
+            emitter.accept(row);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.StreamEx;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Durations and failures of past runs of the module's tests, read from a local cache file
+ * (HISTORY_FILE).  When the file is older than HISTORY_MAX_AGE_HOURS, it is refreshed from the
+ * sink in the background, for the benefit of the next run: nothing ever waits on the network.
+ * Refreshing happens when HISTORY_REFRESH (by default, IS_CI) is true, and never when sharding
+ * (SHARD_COUNT &gt; 1): every agent must see the same history, see {@link ShardFilter}.
+ */
+/* package */ final class TestHistory {
+    private static final Logger LOGGER = LogManager.getLogger(TestHistory.class);
+    private static final String HEADER = "#db-unit-reporter history v1";
+
+    private static TestHistory instance;
+
+    private final Map<String, TestStats> methods = new HashMap<>();
+    private final Map<String, TestStats> classes = new HashMap<>();
+    private final String fingerprint;
+
+    /* package */ TestHistory(Collection<TestStats> stats) {
+        for (var stat : stats) {
+            methods.put(key(stat.getPackageName(), stat.getClassName(), stat.getMethodName()), stat);
+            classes.merge(key(stat.getPackageName(), stat.getClassName(), null), stat, TestHistory::sum);
+        }
+        this.fingerprint = fingerprint(stats);
+    }
+
+    /**
+     * @return the history of the current module, loading it (and starting its refresh) the first
+     *         time.
+     */
+    /* package */ static synchronized TestHistory get() {
+        if (instance == null) {
+            var file = getFile();
+            instance = new TestHistory(read(file));
+            long maxAge = TimeUnit.HOURS.toMillis(Long.parseLong(getPropValue("HISTORY_MAX_AGE_HOURS", "24")));
+            boolean refresh = Boolean.parseBoolean(getPropValue("HISTORY_REFRESH", getPropValue("IS_CI", "false"))) &&
+                    Integer.parseInt(getPropValue("SHARD_COUNT", "1")) <= 1;
+            if (refresh && System.currentTimeMillis() - file.lastModified() > maxAge) {
+                var refresher = new Thread(() -> refresh(file), "historyRefresh");
+                refresher.setDaemon(true);
+                refresher.start();
+            }
+        }
+        return instance;
+    }
+
+    private static File getFile() {
+        var db = getPropValue("DB_NAME", "testresults");
+        var table = getPropValue("TABLE_NAME", "testresults");
+        var name = (db + "." + table + "." + ReporterConfig.getModuleName()).replaceAll("[^A-Za-z0-9_.-]", "_");
+        return new File(getPropValue("HISTORY_FILE",
+                new File(System.getProperty("user.home"), ".cache/db-unit-reporter/" + name + ".history").getPath()));
+    }
+
+    private static String key(String packageName, String className, String methodName) {
+        var key = packageName + "." + className;
+        return methodName == null ? key : key + "#" + methodName;
+    }
+
+    private static TestStats sum(TestStats a, TestStats b) {
+        return new TestStats(a.getPackageName(), a.getClassName(), null,
+                Math.max(a.getRuns(), b.getRuns()),
+                a.getFailures() + b.getFailures(),
+                a.getMedianDuration() + b.getMedianDuration(),
+                Math.max(a.getLastFailure(), b.getLastFailure()));
+    }
+
+    /**
+     * @return what is known about the class (its methods summed up), or null if nothing.
+     */
+    public TestStats getClassStats(Class<?> testClass) {
+        return classes.get(key(testClass.getPackageName(), testClass.getSimpleName(), null));
+    }
+
+    /**
+     * @return what is known about the method, or null if nothing.
+     */
+    public TestStats getMethodStats(Class<?> testClass, String methodName) {
+        return methods.get(key(testClass.getPackageName(), testClass.getSimpleName(), methodName));
+    }
+
+    /**
+     * @return the median of the methods' median durations, or defaultValue without history.
+     */
+    public long getMedianMethodDuration(long defaultValue) {
+        if (methods.isEmpty()) {
+            return defaultValue;
+        }
+        var durations = methods.values().stream().mapToLong(TestStats::getMedianDuration).sorted().toArray();
+        return durations[durations.length / 2];
+    }
+
+    public boolean isEmpty() {
+        return methods.isEmpty();
+    }
+
+    /**
+     * @return a short hash of the statistics, the same for identical histories whatever the
+     *         order of their lines, so that agents can check they used the same one.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    private static String fingerprint(Collection<TestStats> stats) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return ExceptionUtils.rethrow(e);
+        }
+        for (String line : StreamEx.of(stats).map(TestHistory::toLine).sorted().toList()) {
+            digest.update((line + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 6);
+    }
+
+    private static String toLine(TestStats stat) {
+        return String.join("\t",
+                stat.getPackageName(),
+                stat.getClassName(),
+                stat.getMethodName(),
+                Long.toString(stat.getRuns()),
+                Long.toString(stat.getFailures()),
+                Long.toString(stat.getMedianDuration()),
+                Long.toString(stat.getLastFailure()));
+    }
+
+    /**
+     * Only queries the sink: the tables are left to the reporter, that may be creating them.
+     */
+    private static void refresh(File file) {
+        try {
+            var sink = ResultSink.load(getPropValue("SINK", "insertAll"));
+            var stats = sink.readHistory(getPropValue("DB_NAME", "testresults"), getPropValue("TABLE_NAME", "testresults"),
+                    ReporterConfig.getModuleName(), Integer.parseInt(getPropValue("HISTORY_DAYS", "30")));
+            write(file, stats);
+            LOGGER.debug("Refreshed the history of {} tests in {}", stats.size(), file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception | LinkageError e) {
+            LOGGER.debug("Could not refresh the test history in {}", file, e);
+        }
+    }
+
+    /* package */ static List<TestStats> read(File file) {
+        if (!file.isFile()) {
+            return List.of();
+        }
+        var stats = new ArrayList<TestStats>();
+        try (var reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return List.of();
+            }
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                var fields = line.split("\t");
+                if (fields.length == 7) {
+                    stats.add(new TestStats(fields[0], fields[1], fields[2],
+                            Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("Could not read the test history in {}", file, e);
+            return List.of();
+        }
+        return stats;
+    }
+
+    /**
+     * Replaces the file atomically, so concurrent runs only ever see a complete one.
+     */
+    /* package */ static void write(File file, List<TestStats> stats) throws IOException {
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        var temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try (var out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            out.write(HEADER);
+            out.write('\n');
+            for (var stat : stats) {
+                out.write(toLine(stat));
+                out.write('\n');
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
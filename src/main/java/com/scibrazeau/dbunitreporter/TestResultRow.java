@@ -0,0 +1,331 @@
+package com.scibrazeau.dbunitreporter;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * The result of one test, as a compact typed record.  Values that are the same for every test
+ * of the run are shared through a single {@link RunInfo}, times are kept as epoch millis until
+ * a sink reads them, and nothing is copied into a per-test hash map.  Sinks see it as a
+ * read-only map of column name to value (null columns are left out); columns without a field of
+ * their own can still be added with {@link #put(String, Object)}.
+ */
+/* package */ final class TestResultRow extends AbstractMap<String, Object> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {
+            "row_id", "branch_name", "branch_tag", "short_sha", "computer_name", "module_name",
+            "package_name", "class_name", "method_name", "method_desc", "start_time", "end_time",
+            "duration", "stdout", "stdout_bytes", "stdout_truncated", "success", "cpu_time_ms",
+            "allocated_bytes", "gc_count", "gc_time_ms", "tags", "node_id", "parent_id", "node_type"
+    };
+    private static final Set<String> COLUMN_SET = Set.of(COLUMNS);
+
+    /**
+     * Columns that don't change during a run.
+     */
+    /* package */ static final class RunInfo implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String branchName;
+        private final String branchTag;
+        private final String shortSha;
+        private final String computerName;
+        private final String moduleName;
+
+        /* package */ RunInfo(String branchName, String branchTag, String shortSha, String computerName, String moduleName) {
+            this.branchName = branchName;
+            this.branchTag = branchTag;
+            this.shortSha = shortSha;
+            this.computerName = computerName;
+            this.moduleName = moduleName;
+        }
+    }
+
+    private final RunInfo run;
+    private final String rowId;
+    private final String packageName;
+    private final String className;
+    private final String methodName;
+    private final String methodDesc;
+    private final long startMillis;
+    private final long endMillis;
+    private final boolean success;
+    private String stdout;
+    private long stdoutBytes;
+    private boolean stdoutTruncated;
+    private long cpuTimeMs = -1;
+    private long allocatedBytes = -1;
+    private long gcCount = -1;
+    private long gcTimeMs = -1;
+    private String[] tags;
+    private String nodeId;
+    private String parentId;
+    private NodeType nodeType;
+    private HashMap<String, Object> extra;
+    // formatted the first time a sink reads them: a row is read column by column, several times
+    private transient String startTime;
+    private transient String endTime;
+
+    /* package */ TestResultRow(RunInfo run, String rowId, String packageName, String className, String methodName, String methodDesc, long startMillis, long endMillis, boolean success) {
+        this.run = run;
+        this.rowId = rowId;
+        this.packageName = packageName;
+        this.className = className;
+        this.methodName = methodName;
+        this.methodDesc = methodDesc;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.success = success;
+    }
+
+    /* package */ void setStdout(String stdout, long bytes, boolean truncated) {
+        this.stdout = stdout;
+        this.stdoutBytes = bytes;
+        this.stdoutTruncated = truncated;
+    }
+
+    /* package */ void setResources(ResourceProfiler.Snapshot resources) {
+        this.cpuTimeMs = resources.getCpuTimeMs();
+        this.allocatedBytes = resources.getAllocatedBytes();
+        this.gcCount = resources.getGcCount();
+        this.gcTimeMs = resources.getGcTimeMs();
+    }
+
+    /* package */ void setTags(String[] tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Places the row in the timing tree: the JUnit unique id of the node, and of its parent.
+     */
+    /* package */ void setNode(String nodeId, String parentId, NodeType nodeType) {
+        this.nodeId = nodeId;
+        this.parentId = parentId;
+        this.nodeType = nodeType;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /* package */ RunInfo getRunInfo() {
+        return run;
+    }
+
+    /* package */ String getPackageName() {
+        return packageName;
+    }
+
+    /* package */ String getClassName() {
+        return className;
+    }
+
+    /* package */ String getMethodName() {
+        return methodName;
+    }
+
+    /* package */ String getMethodDesc() {
+        return methodDesc;
+    }
+
+    /* package */ long getStartMillis() {
+        return startMillis;
+    }
+
+    /* package */ long getEndMillis() {
+        return endMillis;
+    }
+
+    /* package */ String getStdout() {
+        return stdout;
+    }
+
+    /* package */ long getStdoutBytes() {
+        return stdoutBytes;
+    }
+
+    /* package */ boolean isStdoutTruncated() {
+        return stdoutTruncated;
+    }
+
+    /* package */ String[] getTags() {
+        return tags;
+    }
+
+    /* package */ String getNodeId() {
+        return nodeId;
+    }
+
+    /* package */ String getParentId() {
+        return parentId;
+    }
+
+    /* package */ NodeType getNodeType() {
+        return nodeType;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        switch ((String) key) {
+            case "row_id": return rowId;
+            case "branch_name": return run.branchName;
+            case "branch_tag": return run.branchTag;
+            case "short_sha": return run.shortSha;
+            case "computer_name": return run.computerName;
+            case "module_name": return run.moduleName;
+            case "package_name": return packageName;
+            case "class_name": return className;
+            case "method_name": return methodName;
+            case "method_desc": return methodDesc;
+            case "start_time": return getStartTime();
+            case "end_time": return getEndTime();
+            case "duration": return endMillis - startMillis;
+            case "stdout": return stdout;
+            case "stdout_bytes": return stdoutBytes;
+            case "stdout_truncated": return stdoutTruncated;
+            case "success": return success;
+            case "cpu_time_ms": return cpuTimeMs < 0 ? null : cpuTimeMs;
+            case "allocated_bytes": return allocatedBytes < 0 ? null : allocatedBytes;
+            case "gc_count": return gcCount < 0 ? null : gcCount;
+            case "gc_time_ms": return gcTimeMs < 0 ? null : gcTimeMs;
+            case "tags": return tags;
+            case "node_id": return nodeId;
+            case "parent_id": return parentId;
+            case "node_type": return nodeType == null ? null : nodeType.name();
+            default: return extra == null ? null : extra.get(key);
+        }
+    }
+
+    private String getStartTime() {
+        if (startTime == null) {
+            startTime = formatDateTime(startMillis);
+        }
+        return startTime;
+    }
+
+    private String getEndTime() {
+        if (endTime == null) {
+            endTime = formatDateTime(endMillis);
+        }
+        return endTime;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if ("start_time".equals(key) || "end_time".equals(key)) {
+            return true;
+        }
+        return get(key) != null;
+    }
+
+    /**
+     * Adds a column that has no field of its own.
+     */
+    @Override
+    public Object put(String key, Object value) {
+        if (COLUMN_SET.contains(key)) {
+            throw new UnsupportedOperationException(key + " can't be replaced");
+        }
+        if (extra == null) {
+            extra = new HashMap<>(4);
+        }
+        return extra.put(key, value);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                var entries = new ArrayList<Entry<String, Object>>(COLUMNS.length + (extra == null ? 0 : extra.size()));
+                for (String column : COLUMNS) {
+                    var value = get(column);
+                    if (value != null) {
+                        entries.add(new SimpleImmutableEntry<>(column, value));
+                    }
+                }
+                if (extra != null) {
+                    entries.addAll(extra.entrySet());
+                }
+                return Collections.unmodifiableList(entries).iterator();
+            }
+
+            @Override
+            public int size() {
+                int size = extra == null ? 0 : extra.size();
+                for (String column : COLUMNS) {
+                    if (get(column) != null) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link BatchPipeline#estimateBytes(Map)}, without formatting the times.
+     */
+    /* package */ long estimateBytes() {
+        long bytes = 2;
+        for (String column : COLUMNS) {
+            if (column.endsWith("_time")) {
+                bytes += column.length() + 4L + 25;
+                continue;
+            }
+            var value = get(column);
+            if (value != null) {
+                bytes += column.length() + 4L + BatchPipeline.estimateBytes(value);
+            }
+        }
+        if (extra != null) {
+            for (var entry : extra.entrySet()) {
+                bytes += entry.getKey().length() + 4L + BatchPipeline.estimateBytes(entry.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the UTC date and time, as yyyy-MM-ddTHH:mm:ss.SSS (a BigQuery DATETIME), built
+     *         directly rather than through java.time objects.
+     */
+    /* package */ static String formatDateTime(long epochMillis) {
+        // days to civil date, from Howard Hinnant's "chrono-Compatible Low-Level Date Algorithms"
+        long z = Math.floorDiv(epochMillis, 86_400_000L) + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        int doe = (int) (z - era * 146_097);
+        int yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        int millisOfDay = (int) Math.floorMod(epochMillis, 86_400_000L);
+
+        var chars = new char[23];
+        digits(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        digits(chars, 5, month, 2);
+        chars[7] = '-';
+        digits(chars, 8, day, 2);
+        chars[10] = 'T';
+        digits(chars, 11, millisOfDay / 3_600_000, 2);
+        chars[13] = ':';
+        digits(chars, 14, millisOfDay / 60_000 % 60, 2);
+        chars[16] = ':';
+        digits(chars, 17, millisOfDay / 1000 % 60, 2);
+        chars[19] = '.';
+        digits(chars, 20, millisOfDay % 1000, 3);
+        return new String(chars);
+    }
+
+    private static void digits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.scibrazeau.dbunitreporter;
+
+/**
+ * What past runs recorded for one test method: how long it usually takes and how often, and
+ * how recently, it failed.
+ */
+public final class TestStats {
+    private final String packageName;
+    private final String className;
+    private final String methodName;
+    private final long runs;
+    private final long failures;
+    private final long medianDuration;
+    private final long lastFailure;
+
+    /**
+     * @param medianDuration    in milliseconds.
+     * @param lastFailure       epoch millis of the end of the last failed run, or -1 if none.
+     */
+    public TestStats(String packageName, String className, String methodName, long runs, long failures, long medianDuration, long lastFailure) {
+        this.packageName = packageName;
+        this.className = className;
+        this.methodName = methodName;
+        this.runs = runs;
+        this.failures = failures;
+        this.medianDuration = medianDuration;
+        this.lastFailure = lastFailure;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getMedianDuration() {
+        return medianDuration;
+    }
+
+    public long getLastFailure() {
+        return lastFailure;
+    }
+}
@@ -0,0 +1,220 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.TestTag;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import static com.scibrazeau.dbunitreporter.ReporterConfig.getPropValue;
+
+/**
+ * Reports every node of the test plan from the launcher, rather than by wrapping test methods
+ * (REPORT_MODE=listener): engines, classes and templates as well as tests, dynamic tests
+ * included.  Each row carries the unique id of its node and of its parent, and containers the
+ * time spent before their first child started (setup_ms) and after their last child finished
+ * (teardown_ms), so the cost of fixtures can be attributed.  Lifecycle methods get rows of their
+ * own with TIMING_PHASES=true (see {@link BQTestInterceptor}).
+ *
+ * <p>Only start and end times are taken: output is not captured, and resources not profiled.</p>
+ */
+public class TimingListener implements TestExecutionListener {
+    private static final Logger LOGGER = LogManager.getLogger(TimingListener.class);
+    private static volatile TimingListener active;
+
+    private final boolean enabled;
+    private final LongSupplier clock;
+    private final Map<String, Node> running = new ConcurrentHashMap<>();
+    private Consumer<TestResultRow> rows;
+    private BQTestInterceptor reporter;
+
+    /**
+     * A node that has started: where it comes from, and when its children ran.
+     */
+    private static final class Node {
+        private final long startMillis;
+        private final String packageName;
+        private final String className;
+        private final String methodName;
+        private final String methodDesc;
+        private long firstChildStart = Long.MAX_VALUE;
+        private long lastChildEnd = Long.MIN_VALUE;
+
+        private Node(long startMillis, String packageName, String className, String methodName, String methodDesc) {
+            this.startMillis = startMillis;
+            this.packageName = packageName;
+            this.className = className;
+            this.methodName = methodName;
+            this.methodDesc = methodDesc;
+        }
+
+        private synchronized void childStarted(long millis) {
+            firstChildStart = Math.min(firstChildStart, millis);
+        }
+
+        private synchronized void childFinished(long millis) {
+            lastChildEnd = Math.max(lastChildEnd, millis);
+        }
+    }
+
+    public TimingListener() {
+        this.enabled = "listener".equalsIgnoreCase(getPropValue("REPORT_MODE", "interceptor"))
+                && "true".equals(getPropValue("IS_CI"));
+        this.clock = System::currentTimeMillis;
+    }
+
+    /**
+     * @param rows  receives the rows, instead of a reporter of its own.
+     */
+    /* package */ TimingListener(Consumer<TestResultRow> rows, LongSupplier clock) {
+        this.enabled = true;
+        this.clock = clock;
+        this.rows = rows;
+    }
+
+    /**
+     * @return the listener reporting the current test plan, if any.
+     */
+    /* package */ static TimingListener getActive() {
+        return active;
+    }
+
+    /* package */ void report(TestResultRow row) {
+        rows.accept(row);
+    }
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        if (!enabled) {
+            return;
+        }
+        if (rows == null) {
+            reporter = new BQTestInterceptor();
+            reporter.lazyLoad();
+            rows = reporter::report;
+        }
+        active = this;
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        if (!enabled) {
+            return;
+        }
+        if (active == this) {
+            active = null;
+        }
+        if (reporter != null) {
+            try {
+                reporter.close();
+            } catch (Throwable e) {
+                LOGGER.warn("Failed to complete logging of test results", e);
+            }
+        }
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.getAsLong();
+        var parent = testIdentifier.getParentId().map(running::get).orElse(null);
+        if (parent != null) {
+            parent.childStarted(now);
+        }
+        running.put(testIdentifier.getUniqueId(), newNode(now, testIdentifier.getSource().orElse(null), parent));
+    }
+
+    private static Node newNode(long now, TestSource source, Node parent) {
+        if (source instanceof MethodSource) {
+            var method = (MethodSource) source;
+            // the interceptor puts the argument values in method_desc, which aren't known here:
+            // invocations of methods with parameters are told apart by their display_name instead
+            var methodDesc = method.getMethodParameterTypes().isEmpty() ? "()" : null;
+            return new Node(now, getPackageName(method.getClassName()), getSimpleName(method.getClassName()),
+                    method.getMethodName(), methodDesc);
+        }
+        if (source instanceof ClassSource) {
+            var className = ((ClassSource) source).getClassName();
+            return new Node(now, getPackageName(className), getSimpleName(className), null, null);
+        }
+        // e.g. dynamic tests, reported under the method or class that created them
+        return parent == null ?
+                new Node(now, null, null, null, null) :
+                new Node(now, parent.packageName, parent.className, parent.methodName, parent.methodDesc);
+    }
+
+    // from the name, so classes don't need to be loaded
+    private static String getPackageName(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot < 0 ? "" : className.substring(0, dot);
+    }
+
+    private static String getSimpleName(String className) {
+        return className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        if (!enabled) {
+            return;
+        }
+        var node = running.remove(testIdentifier.getUniqueId());
+        if (node == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        var parentId = testIdentifier.getParentId().orElse(null);
+        var parent = parentId == null ? null : running.get(parentId);
+        if (parent != null) {
+            parent.childFinished(now);
+        }
+        var row = new TestResultRow(
+                BQTestInterceptor.RUN_INFO,
+                BQTestInterceptor.newRowId(),
+                node.packageName,
+                node.className,
+                node.methodName,
+                node.methodDesc,
+                node.startMillis,
+                now,
+                testExecutionResult.getStatus() == TestExecutionResult.Status.SUCCESSFUL
+        );
+        row.setNode(testIdentifier.getUniqueId(), parentId, testIdentifier.isTest() ? NodeType.TEST : NodeType.CONTAINER);
+        row.setTags(BQTestInterceptor.normalizeTags(getTagNames(testIdentifier), null));
+        row.put("display_name", testIdentifier.getDisplayName());
+        if (!testIdentifier.isTest()) {
+            synchronized (node) {
+                if (node.firstChildStart != Long.MAX_VALUE) {
+                    row.put("setup_ms", node.firstChildStart - node.startMillis);
+                    row.put("teardown_ms", now - node.lastChildEnd);
+                }
+            }
+        }
+        rows.accept(row);
+    }
+
+    private static ArrayList<String> getTagNames(TestIdentifier testIdentifier) {
+        var tags = testIdentifier.getTags();
+        if (tags.isEmpty()) {
+            return null;
+        }
+        var names = new ArrayList<String>(tags.size());
+        for (TestTag tag : tags) {
+            names.add(tag.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,83 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Schema;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchPipelineTest {
+    private static Map<String, Object> row(int i) {
+        var row = new HashMap<String, Object>();
+        row.put("row_id", "row" + i);
+        return row;
+    }
+
+    /**
+     * Takes a while to write each batch, and records how many were being written at once.
+     */
+    private static class SlowSink implements ResultSink {
+        private final AtomicInteger writing = new AtomicInteger();
+        private final AtomicInteger maxWriting = new AtomicInteger();
+        private final AtomicInteger rows = new AtomicInteger();
+
+        @Override
+        public String getName() {
+            return "slow";
+        }
+
+        @Override
+        public void open(String dbName, String tableName, Schema schema) {
+        }
+
+        @Override
+        public void write(List<Map<String, Object>> batch) throws InterruptedException {
+            maxWriting.accumulateAndGet(writing.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            rows.addAndGet(batch.size());
+            writing.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testLimitsBatchesInFlight() throws Exception {
+        var queue = new RowQueue(100, OverflowPolicy.BLOCK);
+        var sink = new SlowSink();
+        var pipeline = new BatchPipeline(queue, CompletableFuture.completedFuture(sink), null,
+                1, 1_000_000, 0, Executors.newFixedThreadPool(4), 2);
+        pipeline.start();
+        for (int i = 0; i < 20; i++) {
+            queue.put(row(i));
+        }
+        pipeline.close();
+
+        Assertions.assertEquals(20, sink.rows.get());
+        // 4 sender threads, but only 2 batches at a time
+        Assertions.assertEquals(2, sink.maxWriting.get());
+    }
+
+    @Test
+    public void testGivesUpOnSinkThatNeverOpens() throws Exception {
+        var queue = new RowQueue(100, OverflowPolicy.BLOCK);
+        var neverOpened = new CompletableFuture<ResultSink>();
+        var pipeline = new BatchPipeline(queue, neverOpened, null,
+                10, 1_000_000, 0, Executors.newFixedThreadPool(1), 1);
+        pipeline.setOpenTimeoutMs(100);
+        pipeline.start();
+        for (int i = 0; i < 5; i++) {
+            queue.put(row(i));
+        }
+        long start = System.nanoTime();
+        pipeline.close();
+
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+        Assertions.assertTrue(neverOpened.isCancelled());
+        Assertions.assertTrue(queue.isDrained());
+    }
+}
@@ -0,0 +1,88 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQueryError;
+import com.google.cloud.bigquery.InsertAllRequest;
+import com.google.cloud.bigquery.InsertAllResponse;
+import com.google.cloud.bigquery.TableId;
+import one.util.streamex.IntStreamEx;
+import one.util.streamex.StreamEx;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BigQueryInserterTest {
+    private static final TableId TABLE = TableId.of("db", "results");
+
+    /**
+     * Answers each insertAll with the next response, and records the requests.
+     */
+    private static BigQuery fakeBigQuery(List<InsertAllRequest> requests, LinkedList<Map<Long, List<BigQueryError>>> responses) {
+        var bigQuery = EasyMock.createMock(BigQuery.class);
+        EasyMock.expect(bigQuery.insertAll(EasyMock.anyObject(InsertAllRequest.class))).andAnswer(() -> {
+            requests.add((InsertAllRequest) EasyMock.getCurrentArguments()[0]);
+            return response(responses.isEmpty() ? Map.of() : responses.removeFirst());
+        }).anyTimes();
+        EasyMock.replay(bigQuery);
+        return bigQuery;
+    }
+
+    private static InsertAllResponse response(Map<Long, List<BigQueryError>> errors) {
+        var response = EasyMock.createMock(InsertAllResponse.class);
+        EasyMock.expect(response.hasErrors()).andStubReturn(!errors.isEmpty());
+        EasyMock.expect(response.getInsertErrors()).andStubReturn(errors);
+        EasyMock.replay(response);
+        return response;
+    }
+
+    private static List<Map<String, Object>> batch(int size) {
+        return IntStreamEx.range(size).<Map<String, Object>>mapToObj(i -> {
+            var row = new HashMap<String, Object>();
+            row.put("row_id", "row" + i);
+            return row;
+        }).toList();
+    }
+
+    private static List<String> rowIds(InsertAllRequest request) {
+        return StreamEx.of(request.getRows()).map(InsertAllRequest.RowToInsert::getId).toList();
+    }
+
+    @Test
+    public void testOnlyRetriesRetryableRows() throws Exception {
+        var requests = new ArrayList<InsertAllRequest>();
+        var responses = new LinkedList<Map<Long, List<BigQueryError>>>();
+        responses.add(Map.of(
+                1L, List.of(new BigQueryError("backendError", null, "try again")),
+                2L, List.of(new BigQueryError("invalid", "duration", "not a number"))
+        ));
+        new BigQueryInserter(fakeBigQuery(requests, responses), TABLE, 3, 1).write(batch(3));
+
+        Assertions.assertEquals(2, requests.size());
+        Assertions.assertEquals(List.of("row0", "row1", "row2"), rowIds(requests.get(0)));
+        // the invalid row isn't sent again
+        Assertions.assertEquals(List.of("row1"), rowIds(requests.get(1)));
+    }
+
+    @Test
+    public void testReportsRowsGivenUpOn() {
+        var requests = new ArrayList<InsertAllRequest>();
+        var responses = new LinkedList<Map<Long, List<BigQueryError>>>();
+        for (int attempt = 0; attempt < 3; attempt++) {
+            responses.add(Map.of(0L, List.of(new BigQueryError("rateLimitExceeded", null, "slow down"))));
+        }
+        var inserter = new BigQueryInserter(fakeBigQuery(requests, responses), TABLE, 2, 1);
+        var e = Assertions.assertThrows(PartialWriteException.class, () -> inserter.write(batch(2)));
+
+        Assertions.assertEquals(Set.of("row0"), e.getRowIds());
+        // the first attempt, then two retries of the failing row only
+        Assertions.assertEquals(3, requests.size());
+        Assertions.assertEquals(List.of("row0"), rowIds(requests.get(2)));
+    }
+}
@@ -0,0 +1,80 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class CaptureBufferTest {
+    private static String write(CaptureBuffer buffer, String... chunks) throws IOException {
+        for (String chunk : chunks) {
+            buffer.write(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFitsInMemory() throws IOException {
+        try (var buffer = new CaptureBuffer(4, 4, false)) {
+            Assertions.assertEquals("abcdef", write(buffer, "ab", "cdef"));
+            Assertions.assertEquals(6, buffer.size());
+            Assertions.assertFalse(buffer.isTruncated());
+        }
+    }
+
+    @Test
+    public void testCappedKeepsHeadAndTail() throws IOException {
+        try (var buffer = new CaptureBuffer(3, 3, false)) {
+            var result = write(buffer, "abc", "d", "efghij", "kl");
+            Assertions.assertTrue(result.startsWith("abc"), result);
+            Assertions.assertTrue(result.endsWith("jkl"), result);
+            Assertions.assertTrue(result.contains("[6 bytes truncated]"), result);
+            Assertions.assertEquals(12, buffer.size());
+            Assertions.assertTrue(buffer.isTruncated());
+        }
+    }
+
+    @Test
+    public void testSpilledMiddleIsReassembled() throws IOException {
+        try (var buffer = new CaptureBuffer(2, 3, true)) {
+            var expected = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                var chunk = i + ",";
+                expected.append(chunk);
+                buffer.write(chunk.getBytes(StandardCharsets.UTF_8));
+                buffer.write('\n');
+                expected.append('\n');
+            }
+            Assertions.assertEquals(expected.toString(), buffer.toString(StandardCharsets.UTF_8));
+            Assertions.assertFalse(buffer.isTruncated());
+        }
+    }
+
+    @Test
+    public void testReadsBackPartOfALargeSpill() throws IOException {
+        try (var buffer = new CaptureBuffer(2, 2, true, 4)) {
+            var result = write(buffer, "ab", "0123456789", "yz");
+            Assertions.assertEquals(String.format("ab01%n... [6 bytes truncated] ...%n89yz"), result);
+            Assertions.assertEquals(14, buffer.size());
+            Assertions.assertTrue(buffer.isTruncated());
+        }
+        try (var buffer = new CaptureBuffer(2, 2, true, 10)) {
+            Assertions.assertEquals("ab0123456789yz", write(buffer, "ab", "0123456789", "yz"));
+            Assertions.assertFalse(buffer.isTruncated());
+        }
+    }
+
+    @Test
+    public void testGrowsUpToItsBudget() throws IOException {
+        try (var buffer = new CaptureBuffer(1000, 5000, true)) {
+            var expected = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                var chunk = i + "\n";
+                expected.append(chunk);
+                buffer.write(chunk.getBytes(StandardCharsets.UTF_8));
+            }
+            Assertions.assertEquals(expected.toString(), buffer.toString(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class ForkAggregatorTest {
+    private static final TestResultRow.RunInfo RUN = new TestResultRow.RunInfo("main", "main", "abcdef1", "host", "module");
+
+    private static List<Map<String, Object>> batch(String fork, int size) {
+        var batch = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < size; i++) {
+            var row = new TestResultRow(RUN, fork + "-" + i, "com.example", "SomeTest", "test" + i, "()", 1_000, 1_250, i % 2 == 0);
+            row.setTags(new String[]{fork});
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    @Test
+    public void testCollectsRowsOfEveryFork(@TempDir Path dir) throws Exception {
+        var socket = dir.resolve("reporter.sock");
+        var received = new ConcurrentLinkedQueue<Map<String, Object>>();
+        try (var aggregator = new ForkAggregator(socket, received::add)) {
+            aggregator.start();
+            var forks = new ArrayList<ForkClientSink>();
+            for (int fork = 0; fork < 3; fork++) {
+                var sink = new ForkClientSink(socket, false);
+                sink.open("db", "results", BQTestInterceptor.getSchema());
+                forks.add(sink);
+            }
+            for (int i = 0; i < 3; i++) {
+                forks.get(i).write(batch("fork" + i, 10));
+                forks.get(i).write(batch("fork" + i + "b", 5));
+            }
+            // rows are acknowledged once handed over, before the forks disconnect
+            Assertions.assertEquals(45, received.size());
+            for (var sink : forks) {
+                sink.close();
+            }
+            aggregator.awaitIdle(100);
+            Assertions.assertEquals(45, aggregator.getRows());
+        }
+        Assertions.assertFalse(Files.exists(socket));
+
+        var byId = new HashMap<String, Map<String, Object>>();
+        received.forEach(row -> byId.put((String) row.get("row_id"), row));
+        Assertions.assertEquals(45, byId.size());
+        var row = byId.get("fork1-3");
+        Assertions.assertEquals("test3", row.get("method_name"));
+        Assertions.assertEquals(false, row.get("success"));
+        Assertions.assertArrayEquals(new String[]{"fork1"}, (String[]) row.get("tags"));
+        Assertions.assertEquals("main", row.get("branch_name"));
+    }
+
+    @Test
+    public void testCollectorSummarizesModulesOfEveryFork(@TempDir Path dir) throws Exception {
+        var socket = dir.resolve("reporter.sock");
+        var collector = new BQTestInterceptor(false, true);
+        try (var aggregator = new ForkAggregator(socket, collector::enqueue)) {
+            aggregator.start();
+            for (var module : List.of("core", "web")) {
+                var run = new TestResultRow.RunInfo("main", "main", "abcdef1", "host", module);
+                try (var sink = new ForkClientSink(socket, false)) {
+                    sink.open("db", "results", BQTestInterceptor.getSchema());
+                    sink.write(List.of(new TestResultRow(run, module + "-0", "com.example", "SomeTest", "test", "()", 1_000, 1_250, true)));
+                }
+            }
+        }
+        Assertions.assertEquals(Set.of("core", "web"), collector.getModules());
+    }
+
+    @Test
+    public void testCollectorGetsConfiguration(@TempDir Path dir) {
+        // as set by Surefire's systemPropertyVariables
+        System.setProperty("DB_NAME", "fork_results");
+        System.setProperty("dbunitreporter_TABLE_NAME", "fork_table");
+        System.setProperty("JDBC_PASSWORD", "secret");
+        try {
+            var process = ForkClientSink.newCollectorProcess(dir.resolve("reporter.sock"));
+            var command = process.command();
+            Assertions.assertEquals(ForkAggregator.class.getName(), command.get(command.size() - 2));
+            // nothing that ps would show
+            Assertions.assertTrue(command.stream().noneMatch(arg -> arg.startsWith("-D") || arg.contains("secret")), command::toString);
+            var environment = process.environment();
+            Assertions.assertEquals("fork_results", environment.get("DB_NAME"));
+            Assertions.assertEquals("fork_table", environment.get("dbunitreporter_TABLE_NAME"));
+            Assertions.assertEquals("secret", environment.get("JDBC_PASSWORD"));
+            Assertions.assertFalse(environment.containsKey("java.home"));
+        } finally {
+            System.clearProperty("DB_NAME");
+            System.clearProperty("dbunitreporter_TABLE_NAME");
+            System.clearProperty("JDBC_PASSWORD");
+        }
+    }
+
+    @Test
+    public void testFailsWithoutCollector(@TempDir Path dir) {
+        var sink = new ForkClientSink(dir.resolve("nobody.sock"), false);
+        Assertions.assertThrows(IOException.class, () -> sink.open("db", "results", BQTestInterceptor.getSchema()));
+    }
+}
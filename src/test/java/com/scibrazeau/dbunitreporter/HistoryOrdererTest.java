@@ -0,0 +1,80 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.StreamEx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.List;
+
+public class HistoryOrdererTest {
+    private static final String PACKAGE = HistoryOrdererTest.class.getPackageName();
+
+    private static class Quick {
+        void a() {
+        }
+    }
+
+    private static class Slow {
+        void a() {
+        }
+
+        void b() {
+        }
+
+        void c() {
+        }
+    }
+
+    private static class New {
+    }
+
+    private static final List<TestStats> STATS = List.of(
+            new TestStats(PACKAGE, "Quick", "a", 10, 1, 50, 2_000),
+            new TestStats(PACKAGE, "Slow", "a", 10, 0, 100, -1),
+            new TestStats(PACKAGE, "Slow", "b", 10, 0, 300, -1),
+            new TestStats(PACKAGE, "Slow", "c", 10, 2, 5, 1_000)
+    );
+
+    private static List<String> methodOrder(HistoryOrderer orderer) {
+        return StreamEx.of(Slow.class.getDeclaredMethods())
+                .sorted(orderer.methodComparator())
+                .map(Method::getName)
+                .toList();
+    }
+
+    @Test
+    public void testLongestFirst() {
+        var orderer = new HistoryOrderer(new TestHistory(STATS), HistoryOrderPolicy.LONGEST_FIRST);
+        Assertions.assertEquals(List.of(New.class, Slow.class, Quick.class),
+                StreamEx.of(Quick.class, Slow.class, New.class).sorted(orderer.classComparator()).toList());
+        Assertions.assertEquals(List.of("b", "a", "c"), methodOrder(orderer));
+    }
+
+    @Test
+    public void testRecentlyFailedFirst() {
+        var orderer = new HistoryOrderer(new TestHistory(STATS), HistoryOrderPolicy.RECENTLY_FAILED_FIRST);
+        Assertions.assertEquals(List.of(New.class, Quick.class, Slow.class),
+                StreamEx.of(Quick.class, Slow.class, New.class).sorted(orderer.classComparator()).toList());
+        Assertions.assertEquals(List.of("c", "b", "a"), methodOrder(orderer));
+    }
+
+    @Test
+    public void testCacheFile() throws IOException {
+        var file = File.createTempFile("test", ".history");
+        try {
+            TestHistory.write(file, STATS);
+            var read = TestHistory.read(file);
+            Assertions.assertEquals(STATS.size(), read.size());
+            Assertions.assertEquals(300, read.get(2).getMedianDuration());
+            Assertions.assertEquals(-1, read.get(2).getLastFailure());
+            Files.writeString(file.toPath(), "garbage");
+            Assertions.assertTrue(TestHistory.read(file).isEmpty());
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
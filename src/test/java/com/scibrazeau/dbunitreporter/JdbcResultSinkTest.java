@@ -0,0 +1,142 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.IntStreamEx;
+import one.util.streamex.StreamEx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JdbcResultSinkTest {
+    private static Map<String, Object> row(int i) {
+        var row = new HashMap<String, Object>();
+        row.put("class_name", "JdbcResultSinkTest");
+        row.put("method_name", "method" + i);
+        row.put("start_time", "2022-11-02T10:15:30.123");
+        row.put("duration", (long) i);
+        row.put("success", i % 2 == 0);
+        row.put("tags", new String[]{"A", "B"});
+        return row;
+    }
+
+    @Test
+    public void testDiscoveredByName() {
+        Assertions.assertInstanceOf(JdbcResultSink.class, ResultSink.load("jdbc"));
+        Assertions.assertInstanceOf(BigQueryResultSink.class, ResultSink.load("insertAll"));
+    }
+
+    @Test
+    public void testCreatesTableAndInsertsRows() throws Exception {
+        var url = "jdbc:h2:mem:insert;DB_CLOSE_DELAY=-1";
+        try (var sink = new JdbcResultSink(url, "sa", "", 50)) {
+            sink.open("ignored", "testresults", BQTestInterceptor.getSchema());
+            // two full multi-row statements, plus a partial one
+            sink.write(IntStreamEx.range(120).mapToObj(JdbcResultSinkTest::row).toList());
+        }
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement();
+             var rs = statement.executeQuery("SELECT COUNT(*), SUM(duration), MAX(tags), MAX(create_user) FROM testresults WHERE success")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals(60, rs.getInt(1));
+            Assertions.assertEquals(IntStreamEx.range(0, 120, 2).sum(), rs.getInt(2));
+            Assertions.assertEquals("A,B", rs.getString(3));
+            Assertions.assertEquals("SA", rs.getString(4));
+        }
+    }
+
+    @Test
+    public void testAddsMissingColumns() throws Exception {
+        var url = "jdbc:h2:mem:evolve;DB_CLOSE_DELAY=-1";
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE testresults (class_name VARCHAR, method_name VARCHAR)");
+            statement.execute("INSERT INTO testresults VALUES ('Old', 'row')");
+        }
+        try (var sink = new JdbcResultSink(url, "sa", "", 50)) {
+            sink.open("ignored", "testresults", BQTestInterceptor.getSchema());
+            sink.write(List.of(row(1)));
+        }
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement();
+             var rs = statement.executeQuery("SELECT method_name, duration, stdout_truncated FROM testresults ORDER BY method_name")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals("method1", rs.getString(1));
+            Assertions.assertEquals(1, rs.getLong(2));
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals("row", rs.getString(1));
+            rs.getLong(2);
+            Assertions.assertTrue(rs.wasNull());
+        } catch (SQLException e) {
+            Assertions.fail(e);
+        }
+    }
+
+    @Test
+    public void testDiscardsConnectionAfterFailedWrite() throws Exception {
+        var url = "jdbc:h2:mem:discard;DB_CLOSE_DELAY=-1";
+        try (var sink = new JdbcResultSink(url, "sa", "", 50)) {
+            sink.open("ignored", "testresults", BQTestInterceptor.getSchema());
+            var bad = row(1);
+            bad.put("duration", "not a number");
+            Assertions.assertThrows(ClassCastException.class, () -> sink.write(List.of(row(0), bad)));
+            Assertions.assertEquals(0, countSessions(url));
+            // the next batch gets a new connection
+            sink.write(List.of(row(2)));
+            Assertions.assertEquals(1, countSessions(url));
+        }
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement();
+             var rs = statement.executeQuery("SELECT method_name FROM testresults")) {
+            Assertions.assertTrue(rs.next());
+            Assertions.assertEquals("method2", rs.getString(1));
+            Assertions.assertFalse(rs.next());
+        }
+    }
+
+    /**
+     * The sessions opened by the sink, not counting the one used to count them.
+     */
+    private static int countSessions(String url) throws SQLException {
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement();
+             var rs = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS")) {
+            Assertions.assertTrue(rs.next());
+            return rs.getInt(1) - 1;
+        }
+    }
+
+    @Test
+    public void testReadsHistory() throws Exception {
+        var url = "jdbc:h2:mem:history;DB_CLOSE_DELAY=-1";
+        var now = TestResultRow.formatDateTime(System.currentTimeMillis());
+        try (var sink = new JdbcResultSink(url, "sa", "", 50)) {
+            sink.open("ignored", "testresults", BQTestInterceptor.getSchema());
+            sink.write(IntStreamEx.range(6).mapToObj(i -> {
+                var row = row(i % 2);
+                row.put("module_name", "module");
+                row.put("package_name", "com.example");
+                row.put("start_time", now);
+                row.put("end_time", now);
+                row.put("duration", 10L + i);
+                // rows written before node_type existed, then in listener mode or with TIMING_PHASES
+                row.put("node_type", i < 2 ? null : i < 4 ? "TEST" : i == 4 ? "CONTAINER" : "BEFORE_EACH");
+                return row;
+            }).toList());
+        }
+        // the history is read without opening the sink
+        var reader = new JdbcResultSink(url, "sa", "", 50);
+        var history = StreamEx.of(reader.readHistory("ignored", "testresults", "module", 1)).toMap(TestStats::getMethodName, s -> s);
+        Assertions.assertEquals(2, history.size());
+        Assertions.assertEquals(2, history.get("method0").getRuns());
+        Assertions.assertEquals(0, history.get("method0").getFailures());
+        Assertions.assertEquals(-1, history.get("method0").getLastFailure());
+        Assertions.assertEquals(2, history.get("method1").getFailures());
+        Assertions.assertEquals(12, history.get("method1").getMedianDuration());
+        Assertions.assertTrue(history.get("method1").getLastFailure() > 0);
+        Assertions.assertTrue(reader.readHistory("ignored", "testresults", "other", 1).isEmpty());
+    }
+}
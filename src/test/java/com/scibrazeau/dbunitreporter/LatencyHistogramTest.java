@@ -0,0 +1,65 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long previousHighest = -1;
+        for (int i = 0; i < 1024; i++) {
+            long highest = LatencyHistogram.highestValueOf(i);
+            Assertions.assertEquals(i, LatencyHistogram.indexOf(previousHighest + 1), "lowest of " + i);
+            Assertions.assertEquals(i, LatencyHistogram.indexOf(highest), "highest of " + i);
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        var histogram = new LatencyHistogram();
+        var random = new Random(7);
+        var values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.abs(random.nextGaussian() * 5_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{50, 90, 99}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            Assertions.assertTrue(actual >= expected && actual <= expected * 1.04, percentile + ": " + expected + " vs " + actual);
+        }
+        Assertions.assertEquals(values[values.length - 1], histogram.getMax());
+        Assertions.assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void testSlowestTests() throws IOException {
+        var statistics = new RunStatistics("module", 3);
+        for (int i = 0; i < 100; i++) {
+            statistics.record("com.example.Test" + (i % 10), "test" + i + "()", i);
+        }
+        var slowest = statistics.getSlowest();
+        Assertions.assertEquals(3, slowest.size());
+        Assertions.assertEquals(99, slowest.get(0).getDurationMs());
+        Assertions.assertEquals(97, slowest.get(2).getDurationMs());
+        Assertions.assertEquals(10, statistics.getClasses().size());
+
+        var file = File.createTempFile("stats", ".json");
+        try {
+            statistics.writeJson(file);
+            var json = Files.readString(file.toPath());
+            Assertions.assertTrue(json.startsWith("{\"module\":\"module\",\"durations\":{\"count\":100,"), json);
+            Assertions.assertTrue(json.contains("{\"class\":\"com.example.Test9\",\"method\":\"test99()\",\"duration\":99}"), json);
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+}
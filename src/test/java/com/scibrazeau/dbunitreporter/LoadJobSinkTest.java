@@ -0,0 +1,89 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.IntStreamEx;
+import one.util.streamex.StreamEx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LoadJobSinkTest {
+    private static Map<String, Object> row(int i) {
+        var row = new HashMap<String, Object>();
+        row.put("row_id", "r" + i);
+        row.put("class_name", "LoadJobSinkTest");
+        row.put("method_name", "method" + i);
+        row.put("duration", (long) i);
+        return row;
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        return IntStreamEx.range(count).mapToObj(LoadJobSinkTest::row).toList();
+    }
+
+    private static List<File> files(Path dir, String suffix) {
+        return StreamEx.of(dir.toFile().listFiles()).filter(f -> f.getName().endsWith(suffix)).toList();
+    }
+
+    private static List<String> readAll(List<File> files) throws Exception {
+        var lines = new ArrayList<String>();
+        for (var file : files) {
+            lines.addAll(NdjsonWriterTest.readLines(file.toPath()));
+        }
+        return lines;
+    }
+
+    @Test
+    public void testRotatesFilesIntoLoadDir(@TempDir Path dir) throws Exception {
+        var sink = new LoadJobSink(dir.toString(), 2);
+        var committed = new ArrayList<String>();
+        sink.setCommitListener(committed::addAll);
+        sink.open("db", "results", BQTestInterceptor.getSchema());
+        sink.write(rows(3));
+        sink.write(List.of(row(3), row(4)));
+        // nothing is picked up before the run is closed
+        Assertions.assertEquals(3, files(dir, ".part").size());
+        Assertions.assertTrue(committed.isEmpty());
+
+        sink.close();
+        Assertions.assertTrue(files(dir, ".part").isEmpty());
+        var loaded = files(dir, ".json.gz");
+        Assertions.assertEquals(3, loaded.size());
+        Assertions.assertEquals(5, readAll(loaded).size());
+        Assertions.assertEquals(List.of("r0", "r1", "r2", "r3", "r4"), StreamEx.of(committed).sorted().toList());
+    }
+
+    @Test
+    public void testOnlyCommitsFilesThatWereIngested(@TempDir Path dir) throws Exception {
+        var sink = new LoadJobSink(dir.toString(), 2) {
+            private int ingested;
+
+            @Override
+            void ingest(NdjsonWriter file) throws IOException, InterruptedException {
+                if (++ingested == 2) {
+                    throw new IOException("load failed");
+                }
+                super.ingest(file);
+            }
+        };
+        var committed = new ArrayList<String>();
+        sink.setCommitListener(committed::addAll);
+        sink.open("db", "results", BQTestInterceptor.getSchema());
+        sink.write(rows(5));
+
+        var e = Assertions.assertThrows(IOException.class, sink::close);
+        Assertions.assertEquals(1, e.getSuppressed().length);
+        // the rows of the other files are not sent again
+        Assertions.assertEquals(List.of("r0", "r1", "r4"), committed);
+        Assertions.assertEquals(3, readAll(files(dir, ".json.gz")).size());
+        // the failed file isn't left behind
+        Assertions.assertTrue(files(dir, ".part").isEmpty());
+    }
+}
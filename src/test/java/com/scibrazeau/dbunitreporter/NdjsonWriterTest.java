@@ -0,0 +1,62 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.stream.Collectors;
+
+public class NdjsonWriterTest {
+    private static final List<Field> FIELDS = List.of(
+            Field.of("name", StandardSQLTypeName.STRING),
+            Field.of("count", StandardSQLTypeName.INT64),
+            Field.newBuilder("tags", StandardSQLTypeName.STRING).setMode(Field.Mode.REPEATED).build(),
+            Field.of("ok", StandardSQLTypeName.BOOL)
+    );
+
+    /* package */ static List<String> readLines(Path file) throws Exception {
+        try (var in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file.toFile())), StandardCharsets.UTF_8))) {
+            return in.lines().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testWritesOneObjectPerLine(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("rows.json.gz");
+        var full = new HashMap<String, Object>();
+        full.put("name", "a \"quoted\"\nname");
+        full.put("count", 3L);
+        full.put("tags", new String[]{"x", "y"});
+        full.put("ok", true);
+        full.put("ignored", "not a field");
+        try (var writer = new NdjsonWriter(file.toFile(), FIELDS)) {
+            writer.write(full);
+            // null values are left out
+            writer.write(Map.of("count", 7L, "tags", List.of("z")));
+            Assertions.assertEquals(2, writer.getRows());
+        }
+        Assertions.assertEquals(List.of(
+                "{\"name\":\"a \\\"quoted\\\"\\nname\",\"count\":3,\"tags\":[\"x\",\"y\"],\"ok\":true}",
+                "{\"count\":7,\"tags\":[\"z\"]}"
+        ), readLines(file));
+    }
+
+    @Test
+    public void testEscapesStrings() throws Exception {
+        var out = new StringWriter();
+        NdjsonWriter.writeString(out, "tab\there\\ \r\u0001 é");
+        Assertions.assertEquals("\"tab\\there\\\\ \\r\\u0001 é\"", out.toString());
+    }
+}
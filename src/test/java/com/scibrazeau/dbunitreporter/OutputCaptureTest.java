@@ -0,0 +1,40 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+public class OutputCaptureTest {
+    @Test
+    public void testCapturesThreadsStartedByTheTest() throws InterruptedException {
+        OutputCapture.install();
+        var buffer = new ByteArrayOutputStream();
+        var testEnded = new CountDownLatch(1);
+        var capture = OutputCapture.begin(buffer);
+        Thread outliving;
+        try {
+            System.out.print("test;");
+            var spawned = new Thread(() -> System.out.print("spawned;"));
+            spawned.start();
+            spawned.join();
+            outliving = new Thread(() -> {
+                try {
+                    testEnded.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                System.out.print("late;");
+            });
+            outliving.start();
+        } finally {
+            OutputCapture.end(capture);
+        }
+        testEnded.countDown();
+        outliving.join();
+        // once the test is over, whatever its threads print is no longer captured
+        Assertions.assertEquals("test;spawned;", buffer.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,47 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+public class ResourceProfilerTest {
+    private static final int ALLOCATED = 16 * 1024 * 1024;
+
+    @Test
+    public void testMeasuresDeltas() {
+        var start = ResourceProfiler.snapshot();
+        var chunks = new ArrayList<byte[]>();
+        for (int i = 0; i < 16; i++) {
+            chunks.add(new byte[ALLOCATED / 16]);
+        }
+        long spin = System.nanoTime() + 50_000_000;
+        long sum = 0;
+        while (System.nanoTime() < spin) {
+            sum += chunks.size();
+        }
+        Assertions.assertTrue(sum > 0);
+        System.gc();
+        var used = ResourceProfiler.snapshot().since(start);
+
+        // measured on HotSpot, which the build runs on
+        Assertions.assertTrue(used.getCpuTimeMs() >= 0, () -> "cpu " + used.getCpuTimeMs());
+        Assertions.assertTrue(used.getAllocatedBytes() >= ALLOCATED, () -> "allocated " + used.getAllocatedBytes());
+        Assertions.assertTrue(used.getGcCount() >= 1, () -> "gc count " + used.getGcCount());
+        Assertions.assertTrue(used.getGcTimeMs() >= 0, () -> "gc time " + used.getGcTimeMs());
+    }
+
+    @Test
+    public void testFillsInRowColumns() {
+        var start = ResourceProfiler.snapshot();
+        var row = new TestResultRow(new TestResultRow.RunInfo("main", "main", "abcdef1", "host", "module"),
+                "row", "com.example", "SomeTest", "test", "()", 1_000, 1_250, true);
+        Assertions.assertNull(row.get("cpu_time_ms"));
+        row.setResources(ResourceProfiler.snapshot().since(start));
+        for (var column : new String[]{"cpu_time_ms", "allocated_bytes", "gc_count", "gc_time_ms"}) {
+            var value = (Long) row.get(column);
+            Assertions.assertNotNull(value, column);
+            Assertions.assertTrue(value >= 0, column + " " + value);
+        }
+    }
+}
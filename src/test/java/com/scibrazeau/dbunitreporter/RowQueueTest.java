@@ -0,0 +1,153 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.IntStreamEx;
+import one.util.streamex.StreamEx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class RowQueueTest {
+    private static final int PRODUCERS = 4;
+    private static final int ROWS_PER_PRODUCER = 2_000;
+
+    private static Map<String, Object> row(String id, boolean success) {
+        var row = new HashMap<String, Object>();
+        row.put("row_id", id);
+        row.put("success", success);
+        return row;
+    }
+
+    /**
+     * Every producer puts its rows at once, then closes the queue once they are all done.
+     */
+    private static void produce(RowQueue queue, ExecutorService executor) throws Exception {
+        var futures = new ArrayList<Future<?>>();
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            int p = producer;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < ROWS_PER_PRODUCER; i++) {
+                    queue.put(row(p + "-" + i, i % 2 == 0));
+                }
+                return null;
+            }));
+        }
+        for (var future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        queue.close();
+    }
+
+    private static List<String> drain(RowQueue queue) {
+        var ids = new ArrayList<String>();
+        while (!queue.isDrained()) {
+            var row = queue.poll(10, TimeUnit.MILLISECONDS);
+            if (row != null) {
+                ids.add((String) row.get("row_id"));
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void testBlockKeepsEveryRow() throws Exception {
+        var queue = new RowQueue(10, OverflowPolicy.BLOCK);
+        var executor = Executors.newFixedThreadPool(PRODUCERS + 1);
+        try {
+            var consumer = executor.submit(() -> drain(queue));
+            produce(queue, executor);
+            var ids = consumer.get(30, TimeUnit.SECONDS);
+            Assertions.assertEquals(PRODUCERS * ROWS_PER_PRODUCER, ids.size());
+            Assertions.assertEquals(ids.size(), new HashSet<>(ids).size());
+            Assertions.assertEquals(0, queue.getDropped());
+            Assertions.assertEquals(0, queue.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        var queue = new RowQueue(100, OverflowPolicy.DROP_OLDEST);
+        var dropped = new ConcurrentLinkedQueue<Map<String, Object>>();
+        queue.setDropListener(dropped::add);
+        var executor = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            produce(queue, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(100, queue.size());
+        Assertions.assertEquals(PRODUCERS * ROWS_PER_PRODUCER - 100, queue.getDropped());
+        Assertions.assertEquals(queue.getDropped(), dropped.size());
+        var kept = drain(queue);
+        Assertions.assertEquals(100, kept.size());
+        // the most recent rows of each producer are the ones kept
+        Assertions.assertTrue(StreamEx.of(kept).allMatch(id -> Integer.parseInt(id.substring(id.indexOf('-') + 1)) >= ROWS_PER_PRODUCER - 100), kept::toString);
+        Assertions.assertTrue(queue.isDrained());
+    }
+
+    @Test
+    public void testDropSuccessFirstKeepsFailures() throws Exception {
+        int failures = PRODUCERS * ROWS_PER_PRODUCER / 2;
+        // room for every failure, and a few successes
+        var queue = new RowQueue(failures + 100, OverflowPolicy.DROP_SUCCESS_FIRST);
+        var dropped = new ConcurrentLinkedQueue<Map<String, Object>>();
+        queue.setDropListener(dropped::add);
+        var executor = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            produce(queue, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(failures - 100, queue.getDropped());
+        Assertions.assertEquals(queue.getDropped(), dropped.size());
+        Assertions.assertTrue(StreamEx.of(dropped).allMatch(row -> Boolean.TRUE.equals(row.get("success"))));
+        var kept = new ArrayList<Map<String, Object>>();
+        while (!queue.isDrained()) {
+            var row = queue.poll(10, TimeUnit.MILLISECONDS);
+            if (row != null) {
+                kept.add(row);
+            }
+        }
+        Assertions.assertEquals(failures + 100, kept.size());
+        Assertions.assertEquals(failures, StreamEx.of(kept).remove(row -> Boolean.TRUE.equals(row.get("success"))).count());
+    }
+
+    @Test
+    public void testSpillKeepsEveryRow() throws Exception {
+        var queue = new RowQueue(50, OverflowPolicy.SPILL);
+        var executor = Executors.newFixedThreadPool(PRODUCERS);
+        try {
+            produce(queue, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(PRODUCERS * ROWS_PER_PRODUCER - 50, queue.getSpilled());
+        Assertions.assertEquals(0, queue.getDropped());
+        Assertions.assertFalse(queue.isDrained());
+        var ids = drain(queue);
+        Assertions.assertEquals(IntStreamEx.range(PRODUCERS).flatMapToObj(p -> IntStreamEx.range(ROWS_PER_PRODUCER).mapToObj(i -> p + "-" + i)).toSet(),
+                new HashSet<>(ids));
+        Assertions.assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    @Test
+    public void testDrainedOnlyOnceClosedAndEmpty() {
+        var queue = new RowQueue(10, OverflowPolicy.BLOCK);
+        Assertions.assertFalse(queue.isDrained());
+        Assertions.assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        Assertions.assertFalse(queue.isDrained());
+        queue.close();
+        Assertions.assertTrue(queue.isDrained());
+    }
+}
@@ -0,0 +1,147 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.*;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SchemaUpdatesTest {
+    /**
+     * Keeps table definitions in memory, and records the statements it is asked to run.
+     */
+    private static class FakeTableAdminClient implements TableAdminClient {
+        private final Map<TableId, TableInfo> tables = new HashMap<>();
+        private final List<QueryJobConfiguration> statements = new ArrayList<>();
+
+        @Override
+        public TableInfo getTable(TableId table) {
+            return tables.get(table);
+        }
+
+        @Override
+        public TableInfo create(TableInfo table) {
+            Assertions.assertNull(tables.put(table.getTableId(), table), "already exists");
+            return table;
+        }
+
+        @Override
+        public TableInfo update(TableInfo table) {
+            Assertions.assertNotNull(tables.put(table.getTableId(), table), "missing");
+            return table;
+        }
+
+        @Override
+        public void execute(QueryJobConfiguration statement) {
+            statements.add(statement);
+        }
+    }
+
+    private static TableInfo unpartitionedTable(FakeTableAdminClient client) {
+        var table = TableInfo.newBuilder(TableId.of("db", "results"), StandardTableDefinition.of(Schema.of(
+                Field.of("start_time", StandardSQLTypeName.DATETIME),
+                Field.newBuilder("create_user", StandardSQLTypeName.STRING)
+                        .setDefaultValueExpression("SESSION_USER()")
+                        .build()
+        ))).build();
+        return client.create(table);
+    }
+
+    @Test
+    public void testNewTableIsPartitionedAndClustered() {
+        StandardTableDefinition definition = SchemaUpdates.newDefinition(BQTestInterceptor.getSchema());
+        Assertions.assertEquals(TimePartitioning.Type.DAY, definition.getTimePartitioning().getType());
+        Assertions.assertEquals("start_time", definition.getTimePartitioning().getField());
+        Assertions.assertEquals(List.of("branch_tag", "module_name", "class_name"), definition.getClustering().getFields());
+    }
+
+    @Test
+    public void testAddsClusteringWithoutMigrating() throws InterruptedException {
+        var client = new FakeTableAdminClient();
+        var existing = unpartitionedTable(client);
+        var updates = new SchemaUpdates(client, "proj", "db", "results");
+
+        var table = updates.synchSchema(updates.synchLayout(existing, false), BQTestInterceptor.getSchema());
+
+        StandardTableDefinition definition = client.getTable(table.getTableId()).getDefinition();
+        Assertions.assertEquals(SchemaUpdates.CLUSTERING_FIELDS, definition.getClustering().getFields());
+        Assertions.assertNull(definition.getTimePartitioning());
+        Assertions.assertFalse(SchemaUpdates.isPartitioned(table));
+        // adding columns keeps the clustering
+        Assertions.assertNotNull(definition.getSchema().getFields().get("tags"));
+        Assertions.assertTrue(client.statements.isEmpty());
+    }
+
+    @Test
+    public void testMigratesToPartitionedTable() throws InterruptedException {
+        var client = new FakeTableAdminClient();
+        var existing = unpartitionedTable(client);
+
+        new SchemaUpdates(client, "proj", "db", "results").synchLayout(existing, true);
+
+        Assertions.assertEquals(1, client.statements.size());
+        Assertions.assertEquals(
+                "CREATE TABLE `proj.db.results__partitioned`\n" +
+                "PARTITION BY DATETIME_TRUNC(start_time, DAY)\n" +
+                "CLUSTER BY branch_tag, module_name, class_name\n" +
+                "AS SELECT * FROM `proj.db.results`;\n" +
+                "ALTER TABLE `proj.db.results` RENAME TO `results_unpartitioned`;\n" +
+                "ALTER TABLE `proj.db.results__partitioned` RENAME TO `results`;\n" +
+                "ALTER TABLE `proj.db.results` ALTER COLUMN create_user SET DEFAULT SESSION_USER();\n",
+                client.statements.get(0).getQuery());
+    }
+
+    @Test
+    public void testPostponesMigrationWhileStreaming() throws InterruptedException {
+        var client = new FakeTableAdminClient();
+        var existing = unpartitionedTable(client);
+        StandardTableDefinition definition = existing.getDefinition();
+        var streaming = existing.toBuilder()
+                .setDefinition(definition.toBuilder()
+                        .setStreamingBuffer(EasyMock.niceMock(StandardTableDefinition.StreamingBuffer.class))
+                        .build())
+                .build();
+
+        new SchemaUpdates(client, "proj", "db", "results").synchLayout(streaming, true);
+
+        Assertions.assertTrue(client.statements.isEmpty());
+    }
+
+    @Test
+    public void testDoesNotMigrateAgainAfterFailedAttempt() throws InterruptedException {
+        var client = new FakeTableAdminClient();
+        var existing = unpartitionedTable(client);
+        client.create(TableInfo.newBuilder(TableId.of("db", "results__partitioned"), SchemaUpdates.newDefinition(BQTestInterceptor.getSchema())).build());
+
+        var table = new SchemaUpdates(client, "proj", "db", "results").synchLayout(existing, true);
+
+        Assertions.assertTrue(client.statements.isEmpty());
+        Assertions.assertFalse(SchemaUpdates.isPartitioned(table));
+    }
+
+    @Test
+    public void testCreatesAndUpdatesDailySummary() throws InterruptedException {
+        var client = new FakeTableAdminClient();
+        var summary = new DailySummary(client, "proj", "db", "results", "results_daily");
+        summary.synchTable();
+        summary.update("some-module", 1);
+
+        StandardTableDefinition definition = client.getTable(TableId.of("db", "results_daily")).getDefinition();
+        Assertions.assertEquals("day", definition.getTimePartitioning().getField());
+        Assertions.assertEquals(SchemaUpdates.CLUSTERING_FIELDS, definition.getClustering().getFields());
+
+        Assertions.assertEquals(1, client.statements.size());
+        var merge = client.statements.get(0);
+        Assertions.assertTrue(merge.getQuery().startsWith("MERGE `proj.db.results_daily` T\n"), merge.getQuery());
+        Assertions.assertTrue(merge.getQuery().contains("FROM `proj.db.results`\n"), merge.getQuery());
+        Assertions.assertTrue(merge.getQuery().contains("p95_duration = S.quantiles[OFFSET(95)]"), merge.getQuery());
+        // containers and lifecycle phases aren't test runs
+        Assertions.assertTrue(merge.getQuery().contains("AND (node_type IS NULL OR node_type IN ('TEST', 'TEMPLATE'))\n"), merge.getQuery());
+        Assertions.assertEquals(QueryParameterValue.string("some-module"), merge.getNamedParameters().get("module"));
+        Assertions.assertEquals(QueryParameterValue.int64(1), merge.getNamedParameters().get("days"));
+    }
+}
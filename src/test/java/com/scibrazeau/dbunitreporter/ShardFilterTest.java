@@ -0,0 +1,130 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.StreamEx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ShardFilterTest {
+    private static final String PACKAGE = ShardFilterTest.class.getPackageName();
+
+    private static class Long1 {
+        void a() {
+        }
+
+        void b() {
+        }
+    }
+
+    private static class Long2 {
+        void a() {
+        }
+    }
+
+    private static class Short1 {
+        void a() {
+        }
+    }
+
+    private static class Unknown {
+        void a() {
+        }
+    }
+
+    private static class Descriptor extends AbstractTestDescriptor {
+        private final Type type;
+
+        Descriptor(UniqueId id, String name, TestSource source, Type type) {
+            super(id, name, source);
+            this.type = type;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+    }
+
+    private static EngineDescriptor discover(Class<?>... classes) throws NoSuchMethodException {
+        var root = new EngineDescriptor(UniqueId.forEngine("test"), "test");
+        for (var testClass : classes) {
+            var classId = root.getUniqueId().append("class", testClass.getName());
+            var classDescriptor = new Descriptor(classId, testClass.getSimpleName(), ClassSource.from(testClass), TestDescriptor.Type.CONTAINER);
+            root.addChild(classDescriptor);
+            for (var method : testClass.getDeclaredMethods()) {
+                classDescriptor.addChild(new Descriptor(classId.append("method", method.getName()), method.getName(),
+                        MethodSource.from(method), TestDescriptor.Type.TEST));
+            }
+        }
+        return root;
+    }
+
+    @Test
+    public void testLongestProcessingTimeFirst() {
+        var predicted = Map.of("a", 10L, "b", 7L, "c", 6L, "d", 4L, "e", 3L);
+        var assignment = ShardFilter.assign(predicted, 2);
+        // a | b | c with b (7 < 10) | d with a (10 < 13) | e with b and c (13 < 14)
+        Assertions.assertEquals(Map.of("a", 0, "b", 1, "c", 1, "d", 0, "e", 1), assignment);
+        Assertions.assertEquals(assignment, ShardFilter.assign(new HashMap<>(predicted), 2));
+    }
+
+    @Test
+    public void testEveryTestRunsInExactlyOneShard() throws NoSuchMethodException {
+        var history = new TestHistory(List.of(
+                new TestStats(PACKAGE, "Long1", "a", 1, 0, 500, -1),
+                new TestStats(PACKAGE, "Long1", "b", 1, 0, 400, -1),
+                new TestStats(PACKAGE, "Long2", "a", 1, 0, 800, -1),
+                new TestStats(PACKAGE, "Short1", "a", 1, 0, 10, -1)
+        ));
+        var shards = new ArrayList<List<String>>();
+        for (int index = 0; index < 2; index++) {
+            var filter = new ShardFilter(index, 2, history);
+            var root = discover(Long1.class, Long2.class, Short1.class, Unknown.class);
+            shards.add(StreamEx.of(root.getDescendants())
+                    .filter(d -> d.getChildren().isEmpty())
+                    .filter(d -> filter.apply(d).included())
+                    .map(d -> d.getUniqueId().toString())
+                    .toList());
+        }
+        var all = StreamEx.of(shards).flatMap(List::stream).sorted().toList();
+        Assertions.assertEquals(5, all.size());
+        Assertions.assertEquals(all, StreamEx.of(all).distinct().toList());
+        // Long1 (900) | Long2 (800) | Unknown (500, the median) goes with Long2 | Short1 (10) with Long1
+        Assertions.assertTrue(StreamEx.of(shards.get(0)).allMatch(id -> id.contains("Long1") || id.contains("Short1")), shards.toString());
+        Assertions.assertTrue(StreamEx.of(shards.get(1)).allMatch(id -> id.contains("Long2") || id.contains("Unknown")), shards.toString());
+    }
+
+    @Test
+    public void testHistoryFingerprintIgnoresOrder() {
+        var a = new TestStats(PACKAGE, "Long1", "a", 1, 0, 500, -1);
+        var b = new TestStats(PACKAGE, "Long2", "a", 1, 0, 800, -1);
+        var fingerprint = new TestHistory(List.of(a, b)).getFingerprint();
+        Assertions.assertEquals(fingerprint, new TestHistory(List.of(b, a)).getFingerprint());
+        Assertions.assertNotEquals(fingerprint, new TestHistory(List.of(a, new TestStats(PACKAGE, "Long2", "a", 1, 0, 801, -1))).getFingerprint());
+    }
+
+    @Test
+    public void testShardingRequiresSharedHistory() throws NoSuchMethodException {
+        // neither HISTORY_FILE nor HISTORY_SNAPSHOT is set, so each agent would use its own history
+        var filter = new ShardFilter(0, 2, null);
+        var test = discover(Long1.class).getDescendants().iterator().next();
+        Assertions.assertThrows(IllegalStateException.class, () -> filter.apply(test));
+    }
+
+    @Test
+    public void testNotShardingIncludesEverything() throws NoSuchMethodException {
+        var filter = new ShardFilter(0, 1, null);
+        Assertions.assertTrue(StreamEx.of(discover(Long1.class).getDescendants()).allMatch(d -> filter.apply(d).included()));
+    }
+}
@@ -0,0 +1,186 @@
+package com.scibrazeau.dbunitreporter;
+
+import one.util.streamex.IntStreamEx;
+import one.util.streamex.StreamEx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class SpoolTest {
+    private static Map<String, Object> row(String id) {
+        var row = new HashMap<String, Object>();
+        row.put("row_id", id);
+        row.put("method_name", "method" + id);
+        return row;
+    }
+
+    /**
+     * A spool file left behind by a run that didn't send the given rows.
+     */
+    private static File leaveBehind(Path dir, String... ids) throws IOException {
+        var before = spoolFiles(dir);
+        var spool = Spool.create(dir.toFile());
+        for (var id : ids) {
+            spool.append(row(id));
+        }
+        spool.close();
+        return StreamEx.of(spoolFiles(dir)).remove(before::contains).findFirst().orElseThrow();
+    }
+
+    private static List<File> spoolFiles(Path dir) {
+        var files = dir.toFile().listFiles();
+        return files == null ? List.of() : List.of(files);
+    }
+
+    private static List<String> recover(Spool spool) {
+        var ids = new ArrayList<String>();
+        spool.recoverInto(row -> ids.add((String) row.get("row_id")));
+        return ids;
+    }
+
+    @Test
+    public void testRecoversUnacknowledgedRows(@TempDir Path dir) throws Exception {
+        var old = Spool.create(dir.toFile());
+        old.append(row("a"));
+        old.append(row("b"));
+        old.append(row("c"));
+        old.ack(List.of("b"));
+        old.close();
+        Assertions.assertEquals(1, spoolFiles(dir).size());
+
+        var spool = Spool.create(dir.toFile());
+        Assertions.assertEquals(List.of("a", "c"), recover(spool));
+        // the old file is gone, its rows are now in the new one
+        Assertions.assertEquals(1, spoolFiles(dir).size());
+        spool.close();
+        var again = Spool.create(dir.toFile());
+        Assertions.assertEquals(List.of("a", "c"), recover(again));
+        again.ack(List.of("a", "c"));
+        again.close();
+        Assertions.assertTrue(spoolFiles(dir).isEmpty());
+    }
+
+    @Test
+    public void testRollsOverRegions(@TempDir Path dir) throws Exception {
+        var spool = Spool.create(dir.toFile());
+        var payload = "x".repeat(1024 * 1024);
+        // more than a 16 MB region, and a row bigger than a region
+        for (int i = 0; i < 20; i++) {
+            var row = row("r" + i);
+            row.put("stdout", payload);
+            spool.append(row);
+        }
+        var big = row("big");
+        big.put("stdout", "y".repeat(17 * 1024 * 1024));
+        spool.append(big);
+        spool.append(row("last"));
+        spool.ack(List.of("r0"));
+        spool.close();
+
+        var recovering = Spool.create(dir.toFile());
+        var rows = new ArrayList<Map<String, Object>>();
+        recovering.recoverInto(rows::add);
+        recovering.ack(StreamEx.of(rows).map(row -> (String) row.get("row_id")).toList());
+        recovering.close();
+        Assertions.assertEquals(IntStreamEx.range(1, 20).mapToObj(i -> "r" + i).append("big", "last").toList(),
+                StreamEx.of(rows).map(row -> row.get("row_id")).toList());
+        Assertions.assertEquals(payload, rows.get(0).get("stdout"));
+        Assertions.assertEquals(17 * 1024 * 1024, ((String) rows.get(19).get("stdout")).length());
+    }
+
+    @Test
+    public void testStopsAtTruncatedRecord(@TempDir Path dir) throws Exception {
+        var old = leaveBehind(dir, "a", "b", "c");
+        try (var channel = FileChannel.open(old.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var length = ByteBuffer.allocate(4);
+            channel.read(length, 0);
+            // cut in the middle of the second record
+            channel.truncate(4 + length.flip().getInt() + 10);
+        }
+        var spool = Spool.create(dir.toFile());
+        Assertions.assertEquals(List.of("a"), recover(spool));
+        spool.close();
+    }
+
+    @Test
+    public void testIgnoresFilesThatAreNotSpools(@TempDir Path dir) throws Exception {
+        var garbage = dir.resolve("spool-garbage.dat");
+        Files.write(garbage, new byte[]{0, 0, 0, 7, 1, 42, 42, 0, 0, 1, 0, -1, -1, -1, -1, 1});
+        var spool = Spool.create(dir.toFile());
+        Assertions.assertTrue(recover(spool).isEmpty());
+        spool.ack(List.of());
+        spool.close();
+        Assertions.assertTrue(spoolFiles(dir).isEmpty());
+    }
+
+    @Test
+    public void testOnlyDeserializesRows(@TempDir Path dir) throws Exception {
+        var old = Spool.create(dir.toFile());
+        var unexpected = row("a");
+        // any class outside of java.lang and java.util is refused
+        unexpected.put("stdout", new File("/etc/passwd"));
+        old.append(unexpected);
+        old.append(row("b"));
+        old.close();
+        var spool = Spool.create(dir.toFile());
+        Assertions.assertEquals(List.of("b"), recover(spool));
+        spool.close();
+    }
+
+    @Test
+    public void testLeavesLockedFilesAlone(@TempDir Path dir) throws Exception {
+        var running = Spool.create(dir.toFile());
+        running.append(row("a"));
+        var spool = Spool.create(dir.toFile());
+        Assertions.assertTrue(recover(spool).isEmpty());
+        Assertions.assertEquals(2, spoolFiles(dir).size());
+        running.ack(List.of("a"));
+        running.close();
+        spool.close();
+        Assertions.assertTrue(spoolFiles(dir).isEmpty());
+    }
+
+    @Test
+    public void testRecoversRowFoundInSeveralFilesOnce(@TempDir Path dir) throws Exception {
+        leaveBehind(dir, "a", "b");
+        leaveBehind(dir, "b", "c");
+        var spool = Spool.create(dir.toFile());
+        var ids = recover(spool);
+        spool.close();
+        Assertions.assertEquals(3, ids.size());
+        Assertions.assertEquals(List.of("a", "b", "c"), StreamEx.of(ids).sorted().toList());
+    }
+
+    @Test
+    public void testRecoveryLimits(@TempDir Path dir) throws Exception {
+        long now = System.currentTimeMillis();
+        var tooOld = leaveBehind(dir, "old");
+        Assertions.assertTrue(tooOld.setLastModified(now - TimeUnit.DAYS.toMillis(2)));
+        var tooMany = leaveBehind(dir, "many");
+        Assertions.assertTrue(tooMany.setLastModified(now - TimeUnit.MINUTES.toMillis(3)));
+        var second = leaveBehind(dir, "s1", "s2", "s3");
+        Assertions.assertTrue(second.setLastModified(now - TimeUnit.MINUTES.toMillis(2)));
+        var first = leaveBehind(dir, "f1", "f2");
+        Assertions.assertTrue(first.setLastModified(now - TimeUnit.MINUTES.toMillis(1)));
+
+        var spool = Spool.create(dir.toFile());
+        spool.setRecoveryLimits(2, TimeUnit.DAYS.toMillis(1), 4);
+        // the two most recent files, up to 4 rows; everything else is discarded
+        Assertions.assertEquals(List.of("f1", "f2", "s1", "s2"), recover(spool));
+        Assertions.assertEquals(1, spoolFiles(dir).size());
+        spool.close();
+    }
+}
@@ -0,0 +1,133 @@
+package com.scibrazeau.dbunitreporter;
+
+import com.google.cloud.bigquery.storage.v1.ProtoRows;
+import com.google.cloud.bigquery.storage.v1.ProtoSchema;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class StorageWriteSinkTest {
+    /**
+     * Keeps appended rows in memory; they only become visible once committed.
+     */
+    private static class FakeStorageWriteClient implements StorageWriteClient {
+        private final Map<String, List<ByteString>> pending = new LinkedHashMap<>();
+        private final List<ByteString> committed = new ArrayList<>();
+        private final Set<String> finalized = new HashSet<>();
+        private int commits;
+        private boolean closed;
+        // streams that failed an append, and would fail every later one
+        private final Set<String> broken = new HashSet<>();
+        private boolean failNextAppend;
+
+        @Override
+        public synchronized String createPendingStream(String table) {
+            var name = table + "/streams/" + pending.size();
+            pending.put(name, new ArrayList<>());
+            return name;
+        }
+
+        @Override
+        public synchronized void append(String stream, ProtoSchema schema, ProtoRows rows, long offset) {
+            var streamRows = pending.get(stream);
+            Assertions.assertEquals(streamRows.size(), offset, "offset");
+            Assertions.assertFalse(finalized.contains(stream));
+            if (failNextAppend || broken.contains(stream)) {
+                failNextAppend = false;
+                broken.add(stream);
+                throw new IllegalStateException("stream " + stream + " is broken");
+            }
+            streamRows.addAll(rows.getSerializedRowsList());
+        }
+
+        @Override
+        public synchronized long finalizeStream(String stream) {
+            finalized.add(stream);
+            return pending.get(stream).size();
+        }
+
+        @Override
+        public synchronized void commit(String table, List<String> streams) {
+            commits++;
+            for (String stream : streams) {
+                Assertions.assertTrue(finalized.contains(stream));
+                committed.addAll(pending.get(stream));
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static Map<String, Object> row(String method, boolean success) {
+        var row = new HashMap<String, Object>();
+        row.put("row_id", method);
+        row.put("class_name", "StorageWriteSinkTest");
+        row.put("method_name", method);
+        row.put("start_time", "2022-11-02T10:15:30.123");
+        row.put("duration", 42L);
+        row.put("success", success);
+        row.put("tags", new String[]{"A", "B"});
+        return row;
+    }
+
+    @Test
+    public void testRowsAreCommittedOnceOnClose() throws Exception {
+        var client = new FakeStorageWriteClient();
+        var sink = new StorageWriteSink(client, "proj", "db", "results", BQTestInterceptor.getSchema());
+        var committed = new ArrayList<String>();
+        sink.setCommitListener(committed::addAll);
+        sink.write(List.of(row("a", true), row("b", false)));
+        sink.write(List.of(row("c", true)));
+        Assertions.assertTrue(client.committed.isEmpty());
+
+        sink.close();
+        Assertions.assertEquals(1, client.commits);
+        Assertions.assertTrue(client.closed);
+        Assertions.assertEquals(3, client.committed.size());
+        Assertions.assertEquals(Set.of("a", "b", "c"), new HashSet<>(committed));
+    }
+
+    @Test
+    public void testFailedStreamIsNotReused() throws Exception {
+        var client = new FakeStorageWriteClient();
+        var sink = new StorageWriteSink(client, "proj", "db", "results", BQTestInterceptor.getSchema());
+        var committed = new ArrayList<String>();
+        sink.setCommitListener(committed::addAll);
+        sink.write(List.of(row("a", true)));
+        client.failNextAppend = true;
+        Assertions.assertThrows(IllegalStateException.class, () -> sink.write(List.of(row("b", true), row("c", false))));
+        // later batches go to a new stream
+        sink.write(List.of(row("d", true)));
+        sink.write(List.of(row("e", true)));
+
+        sink.close();
+        Assertions.assertEquals(2, client.pending.size());
+        // including what was written to the broken stream before it failed
+        Assertions.assertEquals(3, client.committed.size());
+        Assertions.assertEquals(Set.of("a", "d", "e"), new HashSet<>(committed));
+    }
+
+    @Test
+    public void testRowsMatchTableSchema() throws InvalidProtocolBufferException {
+        var schema = BQTestInterceptor.getSchema();
+        var descriptor = StorageWriteSink.toDescriptor(schema);
+        Assertions.assertNotNull(descriptor.findFieldByName("duration"));
+        Assertions.assertTrue(descriptor.findFieldByName("tags").isRepeated());
+        // filled in by BigQuery's default value
+        Assertions.assertNull(descriptor.findFieldByName("create_user"));
+
+        var sink = new StorageWriteSink(new FakeStorageWriteClient(), "proj", "db", "results", schema);
+        var message = DynamicMessage.parseFrom(descriptor, sink.toMessage(row("a", false)).toByteString());
+        Assertions.assertEquals("a", message.getField(descriptor.findFieldByName("method_name")));
+        Assertions.assertEquals(42L, message.getField(descriptor.findFieldByName("duration")));
+        Assertions.assertEquals(false, message.getField(descriptor.findFieldByName("success")));
+        Assertions.assertEquals(List.of("A", "B"), message.getField(descriptor.findFieldByName("tags")));
+    }
+}
@@ -0,0 +1,53 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+public class TemplateRollupTest {
+    private static final TestResultRow.RunInfo RUN = new TestResultRow.RunInfo("main", "main", "abcdef1", "host", "module");
+
+    private static TestResultRow invocation(int number, long start, long duration, boolean success) {
+        var row = new TestResultRow(RUN, "id-" + number, "com.example", "SomeTest", "testItems", "(" + number + ")", start, start + duration, success);
+        row.setStdout(success ? null : "failed " + number, 8, false);
+        row.setTags(new String[]{"ROLLUP"});
+        return row;
+    }
+
+    @Test
+    public void testRollsUpInvocations() {
+        var emitted = new ArrayList<TestResultRow>();
+        var rollup = new TemplateRollup("[engine:junit-jupiter]/[class:SomeTest]/[test-template:testItems(int)]", "[engine:junit-jupiter]/[class:SomeTest]", 1, 1024, emitted::add);
+        for (int i = 1; i <= 100; i++) {
+            rollup.add(invocation(i, 1_000L * i, i, i % 40 != 0));
+        }
+        rollup.close();
+
+        Assertions.assertEquals(1, emitted.size());
+        var row = emitted.get(0);
+        Assertions.assertEquals("testItems", row.get("method_name"));
+        Assertions.assertEquals(TemplateRollup.METHOD_DESC, row.get("method_desc"));
+        Assertions.assertEquals(false, row.get("success"));
+        Assertions.assertEquals(100L, row.get("invocations"));
+        Assertions.assertEquals(2L, row.get("failures"));
+        Assertions.assertEquals(1L, row.get("min_duration"));
+        Assertions.assertEquals(50L, row.get("mean_duration"));
+        Assertions.assertEquals(100L, row.get("max_duration"));
+        Assertions.assertEquals(95L, row.get("p95_duration"));
+        Assertions.assertEquals(100_100L - 1_000L, row.get("duration"));
+        // only the first failure is kept, but both are counted
+        Assertions.assertArrayEquals(new String[]{"(40)"}, (String[]) row.get("failed_arguments"));
+        Assertions.assertEquals("(40):\nfailed 40\n", row.get("stdout"));
+        Assertions.assertArrayEquals(new String[]{"ROLLUP"}, (String[]) row.get("tags"));
+        Assertions.assertEquals("TEMPLATE", row.get("node_type"));
+        Assertions.assertEquals("[engine:junit-jupiter]/[class:SomeTest]", row.get("parent_id"));
+    }
+
+    @Test
+    public void testEmitsNothingWithoutInvocations() {
+        var emitted = new ArrayList<TestResultRow>();
+        new TemplateRollup("template", "class", 10, 1024, emitted::add).close();
+        Assertions.assertTrue(emitted.isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class TestResultRowTest {
+    private static TestResultRow newRow() {
+        var run = new TestResultRow.RunInfo("feature/rpds-458", "rpds-458", "abcdef1", "host", "module");
+        var row = new TestResultRow(run, "id-1", "com.example", "SomeTest", "testIt", "()", 1_000, 1_250, true);
+        row.setStdout("hello", 5, false);
+        row.setTags(new String[]{"FAST"});
+        return row;
+    }
+
+    @Test
+    public void testFormatDateTimeMatchesInstant() {
+        var random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long millis = random.nextLong() % 253_402_300_799_999L;
+            millis = Math.abs(millis);
+            var expected = Instant.ofEpochMilli(millis).truncatedTo(ChronoUnit.MILLIS).toString();
+            expected = StringUtils.chop(expected);
+            if (expected.length() == 19) {
+                expected += ".000";
+            }
+            Assertions.assertEquals(expected, TestResultRow.formatDateTime(millis), String.valueOf(millis));
+        }
+    }
+
+    @Test
+    public void testMapView() throws IOException, ClassNotFoundException {
+        var row = newRow();
+        row.put("extra_column", 3L);
+        Assertions.assertEquals("rpds-458", row.get("branch_tag"));
+        Assertions.assertEquals("1970-01-01T00:00:01.000", row.get("start_time"));
+        // formatted once
+        Assertions.assertSame(row.get("start_time"), row.get("start_time"));
+        Assertions.assertEquals(250L, row.get("duration"));
+        Assertions.assertNull(row.get("cpu_time_ms"));
+        Assertions.assertFalse(row.containsKey("cpu_time_ms"));
+        Assertions.assertEquals(3L, row.get("extra_column"));
+        Map<String, Object> copy = new HashMap<>(row);
+        Assertions.assertEquals(copy.keySet(), row.keySet());
+        Assertions.assertEquals(row.size(), copy.size());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> row.put("success", false));
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(row);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            var read = (Map<?, ?>) in.readObject();
+            Assertions.assertEquals(copy.keySet(), read.keySet());
+            Assertions.assertEquals(row.get("row_id"), read.get("row_id"));
+            Assertions.assertEquals(row.get("end_time"), read.get("end_time"));
+            Assertions.assertArrayEquals((Object[]) row.get("tags"), (Object[]) read.get("tags"));
+        }
+    }
+
+    @Test
+    public void testNormalizeTags() {
+        Assertions.assertArrayEquals(new String[0], BQTestInterceptor.normalizeTags(Set.of(), null));
+        Assertions.assertArrayEquals(
+                new String[]{"DB", "FAST", "SLOW TEST", "UNIT"},
+                BQTestInterceptor.normalizeTags(Set.of("fast", "unit"), List.of(" slow   test ,db", "UNIT", ",")));
+    }
+}
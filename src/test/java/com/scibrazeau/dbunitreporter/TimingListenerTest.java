@@ -0,0 +1,97 @@
+package com.scibrazeau.dbunitreporter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestIdentifier;
+
+import java.util.*;
+
+public class TimingListenerTest {
+    private static class Descriptor extends AbstractTestDescriptor {
+        private final Type type;
+
+        private Descriptor(TestDescriptor parent, String segment, Type type, TestSource source) {
+            super(parent.getUniqueId().append(segment, segment), segment, source);
+            this.type = type;
+            parent.addChild(this);
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+    }
+
+    @Test
+    public void testRecordsTimingTree() {
+        var engine = new EngineDescriptor(UniqueId.forEngine("fake"), "Fake");
+        var someClass = new Descriptor(engine, "class", TestDescriptor.Type.CONTAINER, ClassSource.from("com.example.Outer$SomeTest"));
+        var first = new Descriptor(someClass, "first", TestDescriptor.Type.TEST, MethodSource.from("com.example.Outer$SomeTest", "first", "int"));
+        var dynamic = new Descriptor(someClass, "dynamic", TestDescriptor.Type.TEST, null);
+
+        var clock = new long[]{1_000};
+        var rows = new ArrayList<TestResultRow>();
+        var listener = new TimingListener(rows::add, () -> clock[0]);
+        listener.testPlanExecutionStarted(null);
+        Assertions.assertSame(listener, TimingListener.getActive());
+
+        listener.executionStarted(TestIdentifier.from(engine));
+        clock[0] += 10;
+        listener.executionStarted(TestIdentifier.from(someClass));
+        clock[0] += 20;
+        listener.executionStarted(TestIdentifier.from(first));
+        clock[0] += 50;
+        listener.executionFinished(TestIdentifier.from(first), TestExecutionResult.successful());
+        listener.executionStarted(TestIdentifier.from(dynamic));
+        clock[0] += 20;
+        listener.executionFinished(TestIdentifier.from(dynamic), TestExecutionResult.failed(new AssertionError()));
+        clock[0] += 30;
+        listener.executionFinished(TestIdentifier.from(someClass), TestExecutionResult.successful());
+        clock[0] += 5;
+        listener.executionFinished(TestIdentifier.from(engine), TestExecutionResult.successful());
+        listener.testPlanExecutionFinished(null);
+        Assertions.assertNull(TimingListener.getActive());
+
+        Assertions.assertEquals(4, rows.size());
+        var byNode = new HashMap<String, TestResultRow>();
+        rows.forEach(row -> byNode.put(row.getNodeId(), row));
+
+        var firstRow = byNode.get(first.getUniqueId().toString());
+        Assertions.assertEquals("TEST", firstRow.get("node_type"));
+        Assertions.assertEquals(someClass.getUniqueId().toString(), firstRow.get("parent_id"));
+        Assertions.assertEquals("com.example", firstRow.get("package_name"));
+        Assertions.assertEquals("SomeTest", firstRow.get("class_name"));
+        Assertions.assertEquals("first", firstRow.get("method_name"));
+        // its arguments aren't known, unlike to the interceptor
+        Assertions.assertNull(firstRow.get("method_desc"));
+        Assertions.assertEquals("first", firstRow.get("display_name"));
+        Assertions.assertEquals(50L, firstRow.get("duration"));
+        Assertions.assertEquals(true, firstRow.get("success"));
+
+        // no source of its own, so reported under its class
+        var dynamicRow = byNode.get(dynamic.getUniqueId().toString());
+        Assertions.assertEquals("SomeTest", dynamicRow.get("class_name"));
+        Assertions.assertNull(dynamicRow.get("method_name"));
+        Assertions.assertEquals(false, dynamicRow.get("success"));
+
+        var classRow = byNode.get(someClass.getUniqueId().toString());
+        Assertions.assertEquals("CONTAINER", classRow.get("node_type"));
+        Assertions.assertEquals(120L, classRow.get("duration"));
+        Assertions.assertEquals(20L, classRow.get("setup_ms"));
+        Assertions.assertEquals(30L, classRow.get("teardown_ms"));
+
+        var engineRow = byNode.get(engine.getUniqueId().toString());
+        Assertions.assertNull(engineRow.get("parent_id"));
+        Assertions.assertEquals("Fake", engineRow.get("display_name"));
+        Assertions.assertEquals(10L, engineRow.get("setup_ms"));
+        Assertions.assertEquals(5L, engineRow.get("teardown_ms"));
+    }
+}